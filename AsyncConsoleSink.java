@@ -0,0 +1,82 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event sink that hands messages to a background thread through a bounded ring buffer.
+ * The writer drains whatever has queued up and prints it with a single write, so
+ * callers never wait on stdout. When the buffer is full new messages are dropped
+ * and counted rather than blocking the caller.
+ */
+public class AsyncConsoleSink implements LibraryEventSink, AutoCloseable {
+    private static final int MAX_BATCH = 1024;
+
+    private final BlockingQueue<LibraryResult> buffer;
+    private final AtomicLong dropped;
+    private final Thread writer;
+    private volatile boolean running;
+
+    public AsyncConsoleSink(int capacity) {
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.dropped = new AtomicLong();
+        this.running = true;
+        this.writer = new Thread(this::drainLoop, "library-console-sink");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void publish(LibraryResult result) {
+        if (!buffer.offer(result)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Stops the writer after everything already queued has been printed
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        List<LibraryResult> batch = new ArrayList<>(MAX_BATCH);
+        StringBuilder output = new StringBuilder();
+        try {
+            while (running || !buffer.isEmpty()) {
+                LibraryResult first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, MAX_BATCH - 1);
+
+                for (LibraryResult result : batch) {
+                    output.append(result.getMessage()).append(System.lineSeparator());
+                }
+                System.out.print(output);
+                System.out.flush();
+                batch.clear();
+                output.setLength(0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        long lost = dropped.get();
+        if (lost > 0) {
+            System.out.println("(" + lost + " library messages dropped because the output buffer was full)");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/**
+ * Circulation state of every copy of one title, kept as parallel arrays indexed by copy:
+ * a state byte, the member the copy is with (or held for) and an epoch day, which is the
+ * due date of an issued copy or the last pickup day of a held one. The free and issued
+ * counts are updated with every change so availability never requires walking the copies.
+ * Changes are made under the owning book's lock; the counts may be read without it.
+ */
+class BookCopies {
+    static final byte FREE = 0;
+    static final byte ISSUED = 1;
+    static final byte HELD = 2;
+
+    private byte[] states;
+    private String[] members;
+    private int[] days;
+    private int copyCount;
+    private volatile int freeCount;
+    private volatile int issuedCount;
+
+    BookCopies(int copies) {
+        int capacity = Math.max(copies, 1);
+        this.states = new byte[capacity];
+        this.members = new String[capacity];
+        this.days = new int[capacity];
+        this.copyCount = copies;
+        this.freeCount = copies;
+    }
+
+    int getCopyCount() {
+        return copyCount;
+    }
+
+    int getFreeCount() {
+        return freeCount;
+    }
+
+    int getIssuedCount() {
+        return issuedCount;
+    }
+
+    int getHeldCount() {
+        return copyCount - freeCount - issuedCount;
+    }
+
+    void addCopies(int count) {
+        if (copyCount + count > states.length) {
+            int capacity = Math.max(copyCount + count, states.length * 2);
+            states = Arrays.copyOf(states, capacity);
+            members = Arrays.copyOf(members, capacity);
+            days = Arrays.copyOf(days, capacity);
+        }
+        copyCount += count;
+        freeCount += count;
+    }
+
+    // Withdraws free copies by moving the last copy into each vacated slot.
+    // Returns false without changing anything if there aren't enough free copies.
+    boolean removeFreeCopies(int count) {
+        if (count > freeCount) {
+            return false;
+        }
+        int removed = 0;
+        for (int i = copyCount - 1; i >= 0 && removed < count; i--) {
+            if (states[i] == FREE) {
+                int last = copyCount - 1;
+                states[i] = states[last];
+                members[i] = members[last];
+                days[i] = days[last];
+                members[last] = null;
+                copyCount--;
+                removed++;
+            }
+        }
+        freeCount -= count;
+        return true;
+    }
+
+    // Index of the copy in the given state for this member, or -1
+    int find(String memberId, byte state) {
+        for (int i = 0; i < copyCount; i++) {
+            if (states[i] == state && memberId.equals(members[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int firstFree() {
+        for (int i = 0; i < copyCount; i++) {
+            if (states[i] == FREE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void assign(int copy, byte state, String memberId, int day) {
+        adjustCounts(states[copy], -1);
+        states[copy] = state;
+        members[copy] = memberId;
+        days[copy] = day;
+        adjustCounts(state, 1);
+    }
+
+    void release(int copy) {
+        assign(copy, FREE, null, 0);
+    }
+
+    byte getState(int copy) {
+        return states[copy];
+    }
+
+    String getMember(int copy) {
+        return members[copy];
+    }
+
+    int getDay(int copy) {
+        return days[copy];
+    }
+
+    private void adjustCounts(byte state, int delta) {
+        if (state == FREE) {
+            freeCount += delta;
+        } else if (state == ISSUED) {
+            issuedCount += delta;
+        }
+    }
+}
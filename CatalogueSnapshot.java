@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable view of a library's catalogue and shelf state at one moment, as returned by
+ * Library.getCatalogueSnapshot(). Titles are kept in fixed-size chunks by ordinal; a new
+ * snapshot copies only the chunks that changed since the previous one and shares the rest,
+ * so publishing is cheap and a reader can walk a snapshot for as long as it likes without
+ * holding up circulation.
+ */
+public class CatalogueSnapshot {
+    static final int CHUNK_BITS = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_WORDS = CHUNK_SIZE / Long.SIZE;
+
+    private final long epoch;
+    private final Chunk[] chunks;
+    private final int ordinalLimit;
+    private final int titleCount;
+
+    CatalogueSnapshot(long epoch, Chunk[] chunks, int ordinalLimit, int titleCount) {
+        this.epoch = epoch;
+        this.chunks = chunks;
+        this.ordinalLimit = ordinalLimit;
+        this.titleCount = titleCount;
+    }
+
+    // Increases by one each time a changed catalogue is published
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getTitleCount() {
+        return titleCount;
+    }
+
+    // Visits every title in ordinal order
+    public void forEach(Consumer<Entry> action) {
+        stream(0).forEach(action);
+    }
+
+    // Titles in ordinal order starting at fromOrdinal, produced one at a time as the stream is read
+    public Stream<Entry> stream(int fromOrdinal) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Entry>(titleCount,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            private int ordinal = Math.max(0, fromOrdinal);
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Entry> action) {
+                while (ordinal < ordinalLimit) {
+                    int current = ordinal++;
+                    if (chunks[current >>> CHUNK_BITS].books[current & (CHUNK_SIZE - 1)] != null) {
+                        action.accept(entry(current));
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }, false);
+    }
+
+    // Titles with at least one copy on the shelf, in ordinal order. Only their bits are
+    // visited, so the cost follows the number of titles listed rather than the catalogue.
+    public Stream<Entry> streamShelved() {
+        return streamMarked(true);
+    }
+
+    // Titles with at least one copy out on loan, in ordinal order
+    public Stream<Entry> streamIssued() {
+        return streamMarked(false);
+    }
+
+    private Stream<Entry> streamMarked(boolean shelved) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Entry>(titleCount,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            private int word;
+            private long bits;
+            private int base;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Entry> action) {
+                while (bits == 0) {
+                    if (word >= chunks.length * CHUNK_WORDS) {
+                        return false;
+                    }
+                    Chunk chunk = chunks[word / CHUNK_WORDS];
+                    bits = (shelved ? chunk.shelvedMask : chunk.issuedMask)[word % CHUNK_WORDS];
+                    base = word * Long.SIZE;
+                    word++;
+                }
+                int ordinal = base + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                action.accept(entry(ordinal));
+                return true;
+            }
+        }, false);
+    }
+
+    // Titles whose genre (or author) dictionary code is the one given, in ordinal order.
+    // Only this snapshot is read, so the scan never holds a lock circulation needs.
+    List<Book> booksWithCode(boolean genre, int code) {
+        List<Book> results = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            int[] column = genre ? chunk.genres : chunk.authors;
+            for (int slot = 0; slot < CHUNK_SIZE; slot++) {
+                if (column[slot] == code && chunk.books[slot] != null) {
+                    results.add(chunk.books[slot]);
+                }
+            }
+        }
+        return results;
+    }
+
+    private Entry entry(int ordinal) {
+        Chunk chunk = chunks[ordinal >>> CHUNK_BITS];
+        int slot = ordinal & (CHUNK_SIZE - 1);
+        return new Entry(ordinal, chunk.books[slot], chunk.copies[slot], chunk.free[slot], chunk.issued[slot]);
+    }
+
+    Chunk chunk(int index) {
+        return index < chunks.length ? chunks[index] : null;
+    }
+
+    /**
+     * One title and its copy counts as of the snapshot.
+     */
+    public static class Entry {
+        private final int ordinal;
+        private final Book book;
+        private final int copies;
+        private final int available;
+        private final int issued;
+
+        Entry(int ordinal, Book book, int copies, int available, int issued) {
+            this.ordinal = ordinal;
+            this.book = book;
+            this.copies = copies;
+            this.available = available;
+            this.issued = issued;
+        }
+
+        // Position in the snapshot's listing order
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        public int getCopies() {
+            return copies;
+        }
+
+        public int getAvailable() {
+            return available;
+        }
+
+        public int getIssued() {
+            return issued;
+        }
+
+        public int getOnHold() {
+            return copies - available - issued;
+        }
+    }
+
+    // CHUNK_SIZE ordinals' worth of titles, genre and author codes and counts, plus the
+    // shelved and issued bits for them as CHUNK_WORDS longs each; never changed once published
+    static class Chunk {
+        final Book[] books;
+        final int[] genres;
+        final int[] authors;
+        final int[] copies;
+        final int[] free;
+        final int[] issued;
+        final long[] shelvedMask;
+        final long[] issuedMask;
+
+        Chunk(Book[] books, int[] genres, int[] authors, int[] copies, int[] free, int[] issued,
+                long[] shelvedMask, long[] issuedMask) {
+            this.books = books;
+            this.genres = genres;
+            this.authors = authors;
+            this.copies = copies;
+            this.free = free;
+            this.issued = issued;
+            this.shelvedMask = shelvedMask;
+            this.issuedMask = issuedMask;
+        }
+    }
+}
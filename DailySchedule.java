@@ -0,0 +1,30 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a task once a day at a fixed local time. The first run is the next time the clock
+ * reaches runAt, today if that is still ahead and tomorrow otherwise; the task itself is
+ * responsible for catching its own failures, since a task that throws is never run again.
+ */
+final class DailySchedule {
+    private DailySchedule() {
+    }
+
+    static ScheduledFuture<?> start(ScheduledExecutorService scheduler, LocalTime runAt, Runnable task) {
+        return scheduler.scheduleAtFixedRate(task, millisUntil(runAt, LocalDateTime.now()),
+                TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    // Time from now to the next runAt, strictly in the future
+    static long millisUntil(LocalTime runAt, LocalDateTime now) {
+        LocalDateTime firstRun = now.toLocalDate().atTime(runAt);
+        if (!firstRun.isAfter(now)) {
+            firstRun = firstRun.plusDays(1);
+        }
+        return Duration.between(now, firstRun).toMillis();
+    }
+}
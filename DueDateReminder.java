@@ -0,0 +1,51 @@
+import java.time.LocalDate;
+
+/**
+ * A loan crossing one of the reminder thresholds: due in DUE_SOON_DAYS days, or overdue.
+ */
+public class DueDateReminder {
+    public static final int DUE_SOON_DAYS = 2;
+
+    public enum Type {
+        DUE_SOON,
+        OVERDUE
+    }
+
+    private final Type type;
+    private final String isbn;
+    private final String memberId;
+    private final LocalDate dueDate;
+
+    DueDateReminder(Type type, String isbn, String memberId, LocalDate dueDate) {
+        this.type = type;
+        this.isbn = isbn;
+        this.memberId = memberId;
+        this.dueDate = dueDate;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public String getMemberId() {
+        return memberId;
+    }
+
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    // The day the reminder becomes due: two days before the due date, or the day after it
+    public long getTriggerDay() {
+        return type == Type.DUE_SOON ? dueDate.toEpochDay() - DUE_SOON_DAYS : dueDate.toEpochDay() + 1;
+    }
+
+    @Override
+    public String toString() {
+        return type + ": " + isbn + " for member " + memberId + " (Due: " + dueDate + ")";
+    }
+}
@@ -0,0 +1,64 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Sends due-soon and overdue reminders for a library's loans. The library keeps every
+ * open loan's reminders on a timing wheel, so each run only visits the loans crossing a
+ * threshold since the previous run; nothing scans the catalogue. Reminders are handed to
+ * the sink in batches of at most batchSize.
+ */
+public class DueDateReminderScheduler {
+    private static final int DEFAULT_BATCH_SIZE = 1_000;
+
+    private final Library library;
+    private final ReminderSink sink;
+    private final int batchSize;
+
+    public DueDateReminderScheduler(Library library, ReminderSink sink) {
+        this(library, sink, DEFAULT_BATCH_SIZE);
+    }
+
+    public DueDateReminderScheduler(Library library, ReminderSink sink, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.library = library;
+        this.sink = sink;
+        this.batchSize = batchSize;
+    }
+
+    // Delivers everything that came due up to and including the given day; returns how many
+    public int runUntil(LocalDate day) {
+        List<DueDateReminder> batch = new ArrayList<>(batchSize);
+        int[] delivered = {0};
+        library.advanceReminders(day, reminder -> {
+            batch.add(reminder);
+            if (batch.size() == batchSize) {
+                sink.deliver(new ArrayList<>(batch));
+                delivered[0] += batch.size();
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            sink.deliver(batch);
+            delivered[0] += batch.size();
+        }
+        return delivered[0];
+    }
+
+    // Runs once a day at the given time until the returned future is cancelled.
+    // A failed delivery is reported and the next day's run still happens.
+    public ScheduledFuture<?> scheduleDaily(ScheduledExecutorService scheduler, LocalTime runAt) {
+        return DailySchedule.start(scheduler, runAt, () -> {
+            try {
+                runUntil(LocalDate.now());
+            } catch (RuntimeException e) {
+                System.err.println("Reminder run failed: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -1,193 +1,1230 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+public class Library implements AutoCloseable {
+    private static final int LOCK_STRIPES = 256;
+    private static final int LOAN_DAYS = 14;
+    private static final int HOLD_DAYS = 3;
+    private static final int MEMBER_SEARCH_LIMIT = 50;
 
-public class Library {
     private String libraryName;
     private Map<String, Book> books;
     private Map<String, Member> members;
-    private List<String> transactionLog;
+    private TransactionJournal transactionLog;
+
+    // Member IDs in sorted order, giving member listings and pages a stable order
+    private NavigableSet<String> memberIds;
+
+    // Circulation state of every copy of each title. Book itself only describes the title.
+    private Map<String, BookCopies> copies;
+    // Running totals behind getStatistics(), updated by every apply* method so a report
+    // never has to walk the catalogue or the member list
+    private LongAdder totalCopies;
+    private LongAdder issuedCopies;
+    private LongAdder activeMembers;
+
+    // Circulation is safe to call from many threads. Each ISBN and member ID hashes to one
+    // of a fixed set of locks; a book's lock is always taken before a member's lock.
+    private ReentrantLock[] bookLocks;
+    private ReentrantLock[] memberLocks;
+
+    // Mutations hold the read side while they apply and log a change; a snapshot takes
+    // the write side so it never captures a change without its log record or vice versa
+    private ReadWriteLock snapshotLock;
+
+    // Guards ordinal assignment, the dictionary columns and publishing the catalogue below.
+    // Issues and returns never take it; they only write their title's slot in availability.
+    private final Object ordinalLock = new Object();
+
+    // Inverted index: lowercase token -> ISBNs of books whose title, author, genre or ISBN contain it.
+    // Kept sorted so prefix queries are a single range scan. Readers don't lock; writers
+    // synchronize on the index so emptied entries can be removed safely.
+    private NavigableMap<String, Set<String>> searchIndex;
+
+    // Trigram index over member name, email and ID for substring and typo-tolerant lookup
+    private MemberSearchIndex memberIndex;
+
+    // Each book gets a dense ordinal so its catalogue state can be kept in columns and chunks
+    // by position. Ordinals of removed books are reused by later additions. bookOrdinals is
+    // read without ordinalLock, so circulation can find its title's slot without waiting.
+    private Map<String, Integer> bookOrdinals;
+    private List<Book> booksByOrdinal;
+    private Deque<Integer> freeOrdinals;
 
+    // Genres and authors are dictionary encoded: every Book shares one String per distinct
+    // value, and the codes are also kept in int columns by ordinal so scans and the genre
+    // histogram never touch the strings. The columns and histogram are guarded by ordinalLock.
+    private SymbolTable genreSymbols;
+    private SymbolTable authorSymbols;
+    private int[] genreColumn;
+    private int[] authorColumn;
+    private int[] genreHistogram;
+
+    // Copy counts by ordinal as of each title's last change, one AvailabilityChunk per
+    // CatalogueSnapshot chunk. A chunk is written in place without a lock and flags itself
+    // dirty; publishing copies the dirty ones under ordinalLock. Chunks never move once
+    // created, and the directory only grows, under ordinalLock. Readers of displays and
+    // reports get the published snapshot and never lock.
+    private volatile AvailabilityChunk[] availability;
+    private CatalogueSnapshot publishedCatalogue;
+
+    // Due date -> loans due that day, so overdue lookups only touch overdue loans. Nobody
+    // locks: a day's entry is created on first use and kept, so a loan is never added to a
+    // set that has just been dropped. overdueLoans counts the loans of the days before
+    // overdueFrom; see DueDay for how a day is counted exactly once.
+    private NavigableMap<LocalDate, DueDay> dueDateIndex;
+    private volatile LocalDate overdueFrom;
+    private final LongAdder overdueLoans = new LongAdder();
+    private final Object overdueRoll = new Object();
+
+    // Waiting lists per ISBN and the hold shelf, both guarded by the book's lock. A returned copy
+    // is held for the first waiting member for HOLD_DAYS; expiries come off a timing wheel
+    // over epoch days so sweeping never scans every hold.
+    private Map<String, Deque<String>> reservations;
+    private Map<Loan, Hold> holds;
+    private TimingWheel<Hold> holdExpiries;
+
+    // Due-soon and overdue reminders for every open loan, on a timing wheel over epoch days
+    // so advancing it by a day touches only the loans crossing a threshold that day.
+    // The timers of each loan are kept so a return can cancel them.
+    private TimingWheel<DueDateReminder> reminderWheel;
+    private Map<Loan, List<TimingWheel.Timer<DueDateReminder>>> reminderTimers;
+
+    // Every loan the library has made, with co-borrow counts for recommendations. LibraryStore
+    // saves it with each snapshot and rebuilds the rest from the log's issue and return records.
+    private LoanHistory loanHistory;
+
+    // Where operation outcomes go; console output by default
+    private volatile LibraryEventSink eventSink;
+    // Told of each member registered or removed, under that member's lock; null when nobody listens
+    private volatile MemberListener memberListener;
+
+    // Snapshot + write-ahead log persistence; null for libraries that live only in memory
+    private LibraryStore store;
+    private long snapshotInterval;
+
+    // A library whose transaction journal stays on the heap
     public Library(String libraryName) {
+        this(libraryName, null);
+    }
+
+    // A library whose transaction journal is mapped from segment files in journalDirectory,
+    // or kept on the heap when it is null
+    public Library(String libraryName, Path journalDirectory) {
         this.libraryName = libraryName;
-        this.books = new HashMap<>();
-        this.members = new HashMap<>();
-        this.transactionLog = new ArrayList<>();
+        this.books = new ConcurrentHashMap<>();
+        this.members = new ConcurrentHashMap<>();
+        this.memberIds = new ConcurrentSkipListSet<>();
+        this.copies = new ConcurrentHashMap<>();
+        this.totalCopies = new LongAdder();
+        this.issuedCopies = new LongAdder();
+        this.activeMembers = new LongAdder();
+        this.bookLocks = createLocks();
+        this.memberLocks = createLocks();
+        this.snapshotLock = new ReentrantReadWriteLock();
+        this.eventSink = LibraryEventSink.CONSOLE;
+        this.reservations = new ConcurrentHashMap<>();
+        this.holds = new ConcurrentHashMap<>();
+        this.holdExpiries = new TimingWheel<>(LocalDate.now().toEpochDay());
+        this.reminderWheel = new TimingWheel<>(LocalDate.now().toEpochDay());
+        this.reminderTimers = new ConcurrentHashMap<>();
+        try {
+            this.transactionLog = journalDirectory == null ? new TransactionJournal()
+                    : new TransactionJournal(journalDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open transaction journal in " + journalDirectory, e);
+        }
+        this.searchIndex = new ConcurrentSkipListMap<>();
+        this.memberIndex = new MemberSearchIndex();
+        this.loanHistory = new LoanHistory();
+        this.bookOrdinals = new ConcurrentHashMap<>();
+        this.booksByOrdinal = new ArrayList<>();
+        this.freeOrdinals = new ArrayDeque<>();
+        this.genreSymbols = new SymbolTable();
+        this.authorSymbols = new SymbolTable();
+        this.genreColumn = new int[1024];
+        this.authorColumn = new int[1024];
+        this.genreHistogram = new int[16];
+        this.availability = new AvailabilityChunk[0];
+        this.publishedCatalogue = new CatalogueSnapshot(0, new CatalogueSnapshot.Chunk[0], 0, 0);
+        this.dueDateIndex = new ConcurrentSkipListMap<>();
+        this.overdueFrom = LocalDate.now();
+    }
+
+    // Opens a persistent library: loads the last snapshot, replays the log written since,
+    // and writes a fresh snapshot automatically every snapshotInterval mutations
+    public static Library open(String libraryName, Path dataDirectory, long snapshotInterval) {
+        Library library = new Library(libraryName, dataDirectory.resolve("journal"));
+        try {
+            library.store = new LibraryStore(dataDirectory);
+            library.store.load(library);
+        } catch (IOException e) {
+            library.close();
+            throw new UncheckedIOException("Could not load library state from " + dataDirectory, e);
+        }
+        library.snapshotInterval = snapshotInterval;
+        return library;
     }
 
     // Book Management Methods
-    public boolean addBook(String isbn, String title, String author, String genre) {
-        if (books.containsKey(isbn)) {
-            System.out.println("Book with ISBN " + isbn + " already exists!");
-            return false;
+    public LibraryResult addBook(String isbn, String title, String author, String genre) {
+        return addBook(isbn, title, author, genre, 1);
+    }
+
+    public LibraryResult addBook(String isbn, String title, String author, String genre, int copyCount) {
+        return publish(doAddBook(isbn, title, author, genre, copyCount));
+    }
+
+    private LibraryResult doAddBook(String isbn, String title, String author, String genre, int copyCount) {
+        if (copyCount <= 0) {
+            throw new IllegalArgumentException("copyCount must be positive");
         }
 
-        Book book = new Book(isbn, title, author, genre);
-        books.put(isbn, book);
-        logTransaction("BOOK_ADDED: " + isbn + " - " + title + " by " + author);
-        System.out.println("✓ Book added successfully: " + title);
-        return true;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            if (books.containsKey(isbn)) {
+                return LibraryResult.failure(LibraryResult.Status.ALREADY_EXISTS,
+                        "Book with ISBN " + isbn + " already exists!");
+            }
+
+            Lock commitLock = snapshotLock.readLock();
+            commitLock.lock();
+            try {
+                if (store != null) {
+                    store.logAddBook(isbn, title, author, genre);
+                }
+                applyAddBook(isbn, title, author, genre);
+                if (copyCount > 1) {
+                    if (store != null) {
+                        store.logAddCopies(isbn, copyCount - 1);
+                    }
+                    applyAddCopies(isbn, copyCount - 1);
+                }
+            } finally {
+                commitLock.unlock();
+            }
+        } finally {
+            bookLock.unlock();
+        }
+
+        logTransaction("BOOK_ADDED: " + isbn + " - " + title + " by " + author + " (" + copyCount + " copies)");
+        afterMutation();
+        return LibraryResult.success("✓ Book added successfully: " + title);
     }
 
-    public boolean removeBook(String isbn) {
-        Book book = books.get(isbn);
-        if (book == null) {
-            System.out.println("Book with ISBN " + isbn + " not found!");
-            return false;
+    public LibraryResult addCopies(String isbn, int count) {
+        return publish(doAddCopies(isbn, count));
+    }
+
+    private LibraryResult doAddCopies(String isbn, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+
+        BookCopies bookCopies;
+        List<Hold> newHolds = new ArrayList<>();
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            bookCopies = copies.get(isbn);
+            if (bookCopies == null) {
+                return bookNotFound(isbn);
+            }
+
+            Lock commitLock = snapshotLock.readLock();
+            commitLock.lock();
+            try {
+                if (store != null) {
+                    store.logAddCopies(isbn, count);
+                }
+                applyAddCopies(isbn, count);
+            } finally {
+                commitLock.unlock();
+            }
+
+            // New copies go to anyone already waiting for the title
+            while (bookCopies.getFreeCount() > 0) {
+                Hold hold = placeNextHold(isbn);
+                if (hold == null) {
+                    break;
+                }
+                newHolds.add(hold);
+            }
+        } finally {
+            bookLock.unlock();
+        }
+
+        logTransaction("COPIES_ADDED: " + isbn + " (+" + count + ")");
+        newHolds.forEach(this::logHold);
+        afterMutation();
+        return LibraryResult.success("✓ " + count + " copies added. Total copies: " + bookCopies.getCopyCount());
+    }
+
+    // Withdraws copies that are on the shelf; copies out on loan or on hold are never removed
+    public LibraryResult removeCopies(String isbn, int count) {
+        return publish(doRemoveCopies(isbn, count));
+    }
+
+    private LibraryResult doRemoveCopies(String isbn, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
         }
 
-        if (!book.isAvailable()) {
-            System.out.println("Cannot remove book - it is currently issued to member: " + book.getIssuedTo());
-            return false;
+        BookCopies bookCopies;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            bookCopies = copies.get(isbn);
+            if (bookCopies == null) {
+                return bookNotFound(isbn);
+            }
+
+            if (bookCopies.getFreeCount() < count || bookCopies.getCopyCount() == count) {
+                return LibraryResult.failure(LibraryResult.Status.NOT_AVAILABLE, "Cannot remove " + count
+                        + " copies - only " + bookCopies.getFreeCount() + " of " + bookCopies.getCopyCount()
+                        + " are on the shelf (use removeBook to withdraw the title)");
+            }
+
+            Lock commitLock = snapshotLock.readLock();
+            commitLock.lock();
+            try {
+                if (store != null) {
+                    store.logRemoveCopies(isbn, count);
+                }
+                applyRemoveCopies(isbn, count);
+            } finally {
+                commitLock.unlock();
+            }
+        } finally {
+            bookLock.unlock();
+        }
+
+        logTransaction("COPIES_REMOVED: " + isbn + " (-" + count + ")");
+        afterMutation();
+        return LibraryResult.success("✓ " + count + " copies removed. Total copies: " + bookCopies.getCopyCount());
+    }
+
+    public LibraryResult removeBook(String isbn) {
+        return publish(doRemoveBook(isbn));
+    }
+
+    private LibraryResult doRemoveBook(String isbn) {
+        Book book;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            book = books.get(isbn);
+            if (book == null) {
+                return bookNotFound(isbn);
+            }
+
+            BookCopies bookCopies = copies.get(isbn);
+            if (bookCopies.getIssuedCount() > 0) {
+                return LibraryResult.failure(LibraryResult.Status.NOT_AVAILABLE,
+                        "Cannot remove book - " + bookCopies.getIssuedCount() + " copies are currently issued");
+            }
+
+            if (bookCopies.getHeldCount() > 0) {
+                return LibraryResult.failure(LibraryResult.Status.NOT_AVAILABLE,
+                        "Cannot remove book - " + bookCopies.getHeldCount() + " copies are on hold");
+            }
+
+            Lock commitLock = snapshotLock.readLock();
+            commitLock.lock();
+            try {
+                if (store != null) {
+                    store.logRemoveBook(isbn);
+                }
+                applyRemoveBook(isbn);
+            } finally {
+                commitLock.unlock();
+            }
+        } finally {
+            bookLock.unlock();
         }
 
-        books.remove(isbn);
         logTransaction("BOOK_REMOVED: " + isbn + " - " + book.getTitle());
-        System.out.println("✓ Book removed successfully: " + book.getTitle());
-        return true;
+        afterMutation();
+        return LibraryResult.success("✓ Book removed successfully: " + book.getTitle());
+    }
+
+    // Bulk insert used by LibraryBulkLoader. Each row is {isbn, title, author, genre}.
+    // Nothing is printed and the whole batch gets one journal entry.
+    // Returns the ISBNs that were already in the catalogue.
+    List<String> addBooks(List<String[]> rows) {
+        List<String> duplicates = new ArrayList<>();
+        int added = 0;
+        for (String[] row : rows) {
+            String isbn = row[0];
+            Lock bookLock = lockFor(bookLocks, isbn);
+            bookLock.lock();
+            try {
+                if (books.containsKey(isbn)) {
+                    duplicates.add(isbn);
+                    continue;
+                }
+
+                Lock commitLock = snapshotLock.readLock();
+                commitLock.lock();
+                try {
+                    if (store != null) {
+                        store.logAddBook(isbn, row[1], row[2], row[3]);
+                    }
+                    applyAddBook(isbn, row[1], row[2], row[3]);
+                } finally {
+                    commitLock.unlock();
+                }
+            } finally {
+                bookLock.unlock();
+            }
+            added++;
+        }
+
+        if (added > 0) {
+            logTransaction("BOOKS_IMPORTED: " + added + " books");
+            afterMutation();
+        }
+        return duplicates;
     }
 
     // Member Management Methods
-    public boolean addMember(String memberId, String name, String email, String phoneNumber) {
-        if (members.containsKey(memberId)) {
-            System.out.println("Member with ID " + memberId + " already exists!");
-            return false;
+    public LibraryResult addMember(String memberId, String name, String email, String phoneNumber) {
+        return publish(doAddMember(memberId, name, email, phoneNumber));
+    }
+
+    private LibraryResult doAddMember(String memberId, String name, String email, String phoneNumber) {
+        Lock memberLock = lockFor(memberLocks, memberId);
+        memberLock.lock();
+        try {
+            if (members.containsKey(memberId)) {
+                return LibraryResult.failure(LibraryResult.Status.ALREADY_EXISTS,
+                        "Member with ID " + memberId + " already exists!");
+            }
+
+            Lock commitLock = snapshotLock.readLock();
+            commitLock.lock();
+            try {
+                if (store != null) {
+                    store.logAddMember(memberId, name, email, phoneNumber);
+                }
+                applyAddMember(memberId, name, email, phoneNumber);
+            } finally {
+                commitLock.unlock();
+            }
+            MemberListener listener = memberListener;
+            if (listener != null) {
+                listener.membershipChanged(memberId, true);
+            }
+        } finally {
+            memberLock.unlock();
         }
 
-        Member member = new Member(memberId, name, email, phoneNumber);
-        members.put(memberId, member);
         logTransaction("MEMBER_ADDED: " + memberId + " - " + name);
-        System.out.println("✓ Member added successfully: " + name);
-        return true;
+        afterMutation();
+        return LibraryResult.success("✓ Member added successfully: " + name);
     }
 
-    public boolean removeMember(String memberId) {
-        Member member = members.get(memberId);
-        if (member == null) {
-            System.out.println("Member with ID " + memberId + " not found!");
-            return false;
-        }
+    public LibraryResult removeMember(String memberId) {
+        return publish(doRemoveMember(memberId));
+    }
+
+    private LibraryResult doRemoveMember(String memberId) {
+        Member member;
+        Lock memberLock = lockFor(memberLocks, memberId);
+        memberLock.lock();
+        try {
+            member = members.get(memberId);
+            if (member == null) {
+                return memberNotFound(memberId);
+            }
+
+            if (member.getCurrentBorrowedCount() > 0) {
+                return LibraryResult.failure(LibraryResult.Status.HAS_LOANS, "Cannot remove member - they have "
+                        + member.getCurrentBorrowedCount() + " books to return first!");
+            }
 
-        if (member.getCurrentBorrowedCount() > 0) {
-            System.out.println(
-                    "Cannot remove member - they have " + member.getCurrentBorrowedCount() + " books to return first!");
-            return false;
+            Lock commitLock = snapshotLock.readLock();
+            commitLock.lock();
+            try {
+                if (store != null) {
+                    store.logRemoveMember(memberId);
+                }
+                applyRemoveMember(memberId);
+            } finally {
+                commitLock.unlock();
+            }
+            MemberListener listener = memberListener;
+            if (listener != null) {
+                listener.membershipChanged(memberId, false);
+            }
+        } finally {
+            memberLock.unlock();
         }
 
-        members.remove(memberId);
+        List<Hold> newHolds = releaseReservations(memberId);
         logTransaction("MEMBER_REMOVED: " + memberId + " - " + member.getName());
-        System.out.println("✓ Member removed successfully: " + member.getName());
-        return true;
+        newHolds.forEach(this::logHold);
+        afterMutation();
+        return LibraryResult.success("✓ Member removed successfully: " + member.getName());
+    }
+
+    // Takes a removed member out of every reservation queue and releases every copy held for
+    // them to the next member in line; returns the holds placed that way. The member is
+    // already gone from the member map, so no new reservation or hold can slip in behind.
+    private List<Hold> releaseReservations(String memberId) {
+        Set<String> titles = new TreeSet<>(reservations.keySet());
+        for (Loan loan : holds.keySet()) {
+            if (loan.memberId.equals(memberId)) {
+                titles.add(loan.isbn);
+            }
+        }
+
+        List<Hold> newHolds = new ArrayList<>();
+        for (String isbn : titles) {
+            Lock bookLock = lockFor(bookLocks, isbn);
+            bookLock.lock();
+            try {
+                Deque<String> queue = reservations.get(isbn);
+                if (holds.containsKey(new Loan(isbn, memberId))) {
+                    commitReleaseHold(isbn, memberId);
+                    Hold next = placeNextHold(isbn);
+                    if (next != null) {
+                        newHolds.add(next);
+                    }
+                } else if (queue != null && queue.contains(memberId)) {
+                    commitCancelReservation(isbn, memberId);
+                }
+            } finally {
+                bookLock.unlock();
+            }
+        }
+        return newHolds;
     }
 
     // Book Issue and Return Methods
-    public boolean issueBook(String isbn, String memberId) {
-        Book book = books.get(isbn);
-        Member member = members.get(memberId);
+    public LibraryResult issueBook(String isbn, String memberId) {
+        return publish(doIssueBook(isbn, memberId));
+    }
 
-        if (book == null) {
-            System.out.println("Book with ISBN " + isbn + " not found!");
-            return false;
+    private LibraryResult doIssueBook(String isbn, String memberId) {
+        Book book;
+        Member member;
+        LocalDate dueDate;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        Lock memberLock = lockFor(memberLocks, memberId);
+        bookLock.lock();
+        memberLock.lock();
+        try {
+            book = books.get(isbn);
+            member = members.get(memberId);
+
+            if (book == null) {
+                return bookNotFound(isbn);
+            }
+
+            if (member == null) {
+                return memberNotFound(memberId);
+            }
+
+            BookCopies bookCopies = copies.get(isbn);
+            if (bookCopies.find(memberId, BookCopies.ISSUED) >= 0) {
+                return LibraryResult.failure(LibraryResult.Status.ALREADY_EXISTS,
+                        "Member " + memberId + " already has a copy of this book!");
+            }
+
+            Hold hold = holds.get(new Loan(isbn, memberId));
+            if (hold == null && bookCopies.getFreeCount() == 0) {
+                return LibraryResult.failure(LibraryResult.Status.NOT_AVAILABLE,
+                        "No copies available (" + bookCopies.getIssuedCount() + " issued, "
+                                + bookCopies.getHeldCount() + " on hold)");
+            }
+
+            if (!member.canBorrowMore()) {
+                return LibraryResult.failure(LibraryResult.Status.LIMIT_REACHED,
+                        "Member has reached maximum borrow limit (" + member.getMaxBorrowLimit() + " books)!");
+            }
+
+            LocalDate today = LocalDate.now();
+            dueDate = today.plusDays(LOAN_DAYS);
+            Lock commitLock = snapshotLock.readLock();
+            commitLock.lock();
+            try {
+                if (store != null) {
+                    store.logIssue(isbn, memberId, dueDate, today);
+                }
+                applyIssue(isbn, memberId, dueDate);
+                // Queued inside the commit so a snapshot never has the loan without its history
+                loanHistory.recordIssue(isbn, memberId, today.toEpochDay()); // applied by flush()
+            } finally {
+                commitLock.unlock();
+            }
+        } finally {
+            memberLock.unlock();
+            bookLock.unlock();
         }
 
-        if (member == null) {
-            System.out.println("Member with ID " + memberId + " not found!");
-            return false;
+        loanHistory.flush();
+        logTransaction("BOOK_ISSUED: " + isbn + " to member " + memberId + " (Due: " + dueDate + ")");
+        afterMutation();
+        return LibraryResult.success("✓ Book issued successfully!"
+                + "\n  Book: " + book.getTitle()
+                + "\n  Member: " + member.getName()
+                + "\n  Due Date: " + dueDate);
+    }
+
+    // Returns the only copy of a title that is out; with several copies out the member must be given
+    public LibraryResult returnBook(String isbn) {
+        return publish(doReturnBook(isbn));
+    }
+
+    private LibraryResult doReturnBook(String isbn) {
+        String memberId = null;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            BookCopies bookCopies = copies.get(isbn);
+            if (bookCopies == null) {
+                return bookNotFound(isbn);
+            }
+
+            if (bookCopies.getIssuedCount() > 1) {
+                return LibraryResult.failure(LibraryResult.Status.AMBIGUOUS,
+                        bookCopies.getIssuedCount() + " copies are issued - specify the member returning it");
+            }
+
+            for (int copy = 0; copy < bookCopies.getCopyCount() && memberId == null; copy++) {
+                if (bookCopies.getState(copy) == BookCopies.ISSUED) {
+                    memberId = bookCopies.getMember(copy);
+                }
+            }
+            if (memberId == null) {
+                return LibraryResult.failure(LibraryResult.Status.NOT_ISSUED, "Book is not currently issued!");
+            }
+
+            // The book lock is reentrant, so the copy can't change hands in between
+            return doReturnBook(isbn, memberId);
+        } finally {
+            bookLock.unlock();
+        }
+    }
+
+    public LibraryResult returnBook(String isbn, String memberId) {
+        return publish(doReturnBook(isbn, memberId));
+    }
+
+    private LibraryResult doReturnBook(String isbn, String memberId) {
+        Book book;
+        Member member;
+        boolean wasOverdue;
+        Hold nextHold;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        Lock memberLock = lockFor(memberLocks, memberId);
+        bookLock.lock();
+        memberLock.lock();
+        try {
+            book = books.get(isbn);
+
+            if (book == null) {
+                return bookNotFound(isbn);
+            }
+
+            BookCopies bookCopies = copies.get(isbn);
+            int copy = bookCopies.find(memberId, BookCopies.ISSUED);
+            if (copy < 0) {
+                return LibraryResult.failure(LibraryResult.Status.NOT_ISSUED,
+                        "Book is not currently issued to member " + memberId + "!");
+            }
+
+            member = members.get(memberId);
+            wasOverdue = isOverdue(LocalDate.ofEpochDay(bookCopies.getDay(copy)));
+
+            LocalDate today = LocalDate.now();
+            Lock commitLock = snapshotLock.readLock();
+            commitLock.lock();
+            try {
+                if (store != null) {
+                    store.logReturn(isbn, memberId, today);
+                }
+                applyReturn(isbn, memberId);
+                loanHistory.recordReturn(isbn, memberId, today.toEpochDay()); // queued; applied by flush()
+            } finally {
+                commitLock.unlock();
+            }
+
+            nextHold = placeNextHold(isbn);
+        } finally {
+            memberLock.unlock();
+            bookLock.unlock();
+        }
+
+        loanHistory.flush();
+        String overdueInfo = wasOverdue ? " (WAS OVERDUE)" : "";
+        logTransaction("BOOK_RETURNED: " + isbn + " from member " + memberId + overdueInfo);
+        afterMutation();
+        String message = "✓ Book returned successfully!" + overdueInfo + "\n  Book: " + book.getTitle();
+        if (member != null) {
+            message += "\n  Member: " + member.getName();
+        }
+        if (nextHold != null) {
+            logHold(nextHold);
+            message += "\n  On hold for: " + nextHold.memberId + " until " + nextHold.expires;
+        }
+        return LibraryResult.success(message);
+    }
+
+    // Reservation Methods
+    public LibraryResult reserveBook(String isbn, String memberId) {
+        return publish(doReserveBook(isbn, memberId));
+    }
+
+    private LibraryResult doReserveBook(String isbn, String memberId) {
+        int position;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            BookCopies bookCopies = copies.get(isbn);
+            if (bookCopies == null) {
+                return bookNotFound(isbn);
+            }
+
+            if (!members.containsKey(memberId)) {
+                return memberNotFound(memberId);
+            }
+
+            if (bookCopies.getFreeCount() > 0) {
+                return LibraryResult.failure(LibraryResult.Status.AVAILABLE,
+                        "A copy is available - issue it instead of reserving!");
+            }
+
+            Deque<String> queue = reservations.get(isbn);
+            if (bookCopies.find(memberId, BookCopies.ISSUED) >= 0 || bookCopies.find(memberId, BookCopies.HELD) >= 0
+                    || (queue != null && queue.contains(memberId))) {
+                return LibraryResult.failure(LibraryResult.Status.ALREADY_EXISTS,
+                        "Member " + memberId + " already has or is waiting for this book!");
+            }
+
+            commitReserve(isbn, memberId);
+            position = reservations.get(isbn).size();
+        } finally {
+            bookLock.unlock();
+        }
+
+        logTransaction("BOOK_RESERVED: " + isbn + " by member " + memberId);
+        return LibraryResult.success("✓ Book reserved! Position in queue: " + position);
+    }
+
+    public LibraryResult cancelReservation(String isbn, String memberId) {
+        return publish(doCancelReservation(isbn, memberId));
+    }
+
+    private LibraryResult doCancelReservation(String isbn, String memberId) {
+        Hold nextHold = null;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            Deque<String> queue = reservations.get(isbn);
+            if (holds.containsKey(new Loan(isbn, memberId))) {
+                commitReleaseHold(isbn, memberId);
+                nextHold = placeNextHold(isbn);
+            } else if (queue != null && queue.contains(memberId)) {
+                commitCancelReservation(isbn, memberId);
+            } else {
+                return LibraryResult.failure(LibraryResult.Status.NOT_FOUND,
+                        "No reservation for book " + isbn + " by member " + memberId);
+            }
+        } finally {
+            bookLock.unlock();
+        }
+
+        logTransaction("RESERVATION_CANCELLED: " + isbn + " by member " + memberId);
+        String message = "✓ Reservation cancelled.";
+        if (nextHold != null) {
+            logHold(nextHold);
+            message += "\n  On hold for: " + nextHold.memberId + " until " + nextHold.expires;
+        }
+        return LibraryResult.success(message);
+    }
+
+    // Releases holds that were not picked up in time, passing each copy on to the next
+    // member in its queue. Only holds that expired since the last sweep are visited.
+    public int sweepExpiredHolds() {
+        List<Hold> expired = new ArrayList<>();
+        holdExpiries.advanceTo(LocalDate.now().toEpochDay(), expired::add);
+
+        int released = 0;
+        List<Hold> newHolds = new ArrayList<>();
+        for (Hold hold : expired) {
+            Lock bookLock = lockFor(bookLocks, hold.isbn);
+            bookLock.lock();
+            try {
+                if (holds.get(new Loan(hold.isbn, hold.memberId)) == hold) {
+                    released++;
+                    commitReleaseHold(hold.isbn, hold.memberId);
+                    Hold next = placeNextHold(hold.isbn);
+                    if (next != null) {
+                        newHolds.add(next);
+                    }
+                }
+            } finally {
+                bookLock.unlock();
+            }
+        }
+
+        if (released > 0) {
+            logTransaction("HOLDS_EXPIRED: " + released);
+        }
+        newHolds.forEach(this::logHold);
+        return released;
+    }
+
+    // The queues are plain ArrayDeques guarded by the book's lock
+    public int getReservationCount(String isbn) {
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            Deque<String> queue = reservations.get(isbn);
+            return queue != null ? queue.size() : 0;
+        } finally {
+            bookLock.unlock();
+        }
+    }
+
+    // Holds a copy that is on the shelf for the member right away, unless other members are
+    // waiting for the title: then the copy goes to the first of them, as a returned copy
+    // would, and the member joins the end of the queue. LibraryNetwork uses this after
+    // moving a copy in from another branch.
+    LibraryResult holdFreeCopy(String isbn, String memberId) {
+        return publish(doHoldFreeCopy(isbn, memberId));
+    }
+
+    private LibraryResult doHoldFreeCopy(String isbn, String memberId) {
+        Hold hold;
+        int position = 0;
+        Lock bookLock = lockFor(bookLocks, isbn);
+        bookLock.lock();
+        try {
+            BookCopies bookCopies = copies.get(isbn);
+            if (bookCopies == null) {
+                return bookNotFound(isbn);
+            }
+
+            LibraryResult refused = holdRefusal(isbn, memberId);
+            if (refused != null) {
+                return refused;
+            }
+
+            if (bookCopies.getFreeCount() == 0) {
+                return LibraryResult.failure(LibraryResult.Status.NOT_AVAILABLE, "No copies on the shelf to hold!");
+            }
+
+            Deque<String> queue = reservations.get(isbn);
+            if (queue == null || queue.peek().equals(memberId)) {
+                hold = commitHold(isbn, memberId);
+            } else {
+                hold = placeNextHold(isbn);
+                queue = reservations.get(isbn);
+                if (queue == null || !queue.contains(memberId)) {
+                    commitReserve(isbn, memberId);
+                }
+                position = new ArrayList<>(reservations.get(isbn)).indexOf(memberId) + 1;
+            }
+        } finally {
+            bookLock.unlock();
         }
 
-        if (!book.isAvailable()) {
-            System.out.println("Book is already issued to member: " + book.getIssuedTo());
-            return false;
+        logHold(hold);
+        if (position > 0) {
+            logTransaction("BOOK_RESERVED: " + isbn + " by member " + memberId);
+            return LibraryResult.success("✓ The copy went to the first member waiting for it. Book reserved! "
+                    + "Position in queue: " + position);
+        }
+        return LibraryResult.success("✓ Copy held for member " + memberId + " until " + hold.expires);
+    }
+
+    // Why the member can't be given a hold on the title, or null if nothing stands in the way.
+    // The title need not be catalogued here yet. Caller holds the book's lock.
+    LibraryResult holdRefusal(String isbn, String memberId) {
+        Lock memberLock = lockFor(memberLocks, memberId);
+        memberLock.lock();
+        try {
+            Member member = members.get(memberId);
+            if (member == null) {
+                return memberNotFound(memberId);
+            }
+
+            BookCopies bookCopies = copies.get(isbn);
+            if (bookCopies != null && (bookCopies.find(memberId, BookCopies.ISSUED) >= 0
+                    || bookCopies.find(memberId, BookCopies.HELD) >= 0)) {
+                return LibraryResult.failure(LibraryResult.Status.ALREADY_EXISTS,
+                        "Member " + memberId + " already has this book or a hold on it!");
+            }
+
+            if (!member.canBorrowMore()) {
+                return LibraryResult.failure(LibraryResult.Status.LIMIT_REACHED,
+                        "Member has reached maximum borrow limit (" + member.getMaxBorrowLimit() + " books)!");
+            }
+            return null;
+        } finally {
+            memberLock.unlock();
+        }
+    }
+
+    public int getCopyCount(String isbn) {
+        BookCopies bookCopies = copies.get(isbn);
+        return bookCopies != null ? bookCopies.getCopyCount() : 0;
+    }
+
+    // Copies on the shelf, neither issued nor on hold
+    public int getAvailableCopyCount(String isbn) {
+        BookCopies bookCopies = copies.get(isbn);
+        return bookCopies != null ? bookCopies.getFreeCount() : 0;
+    }
+
+    // Puts a free copy on hold for the first member waiting for the title, or returns null
+    // if nobody is. Removing a member takes them out of every queue, so the first in line is
+    // always registered. Caller holds the book's lock and has checked that a copy is free.
+    private Hold placeNextHold(String isbn) {
+        Deque<String> queue = reservations.get(isbn);
+        if (queue == null || queue.isEmpty()) {
+            return null;
+        }
+        return commitHold(isbn, queue.peek());
+    }
+
+    // Reservation changes are logged and applied like every other change. Caller holds the book's lock.
+    private Hold commitHold(String isbn, String memberId) {
+        LocalDate expires = LocalDate.now().plusDays(HOLD_DAYS);
+        Lock commitLock = snapshotLock.readLock();
+        commitLock.lock();
+        try {
+            if (store != null) {
+                store.logHold(isbn, memberId, expires);
+            }
+            applyHold(isbn, memberId, expires);
+        } finally {
+            commitLock.unlock();
+        }
+        return holds.get(new Loan(isbn, memberId));
+    }
+
+    private void commitReserve(String isbn, String memberId) {
+        Lock commitLock = snapshotLock.readLock();
+        commitLock.lock();
+        try {
+            if (store != null) {
+                store.logReserve(isbn, memberId);
+            }
+            applyReserve(isbn, memberId);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void commitReleaseHold(String isbn, String memberId) {
+        Lock commitLock = snapshotLock.readLock();
+        commitLock.lock();
+        try {
+            if (store != null) {
+                store.logReleaseHold(isbn, memberId);
+            }
+            applyReleaseHold(isbn, memberId);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void commitCancelReservation(String isbn, String memberId) {
+        Lock commitLock = snapshotLock.readLock();
+        commitLock.lock();
+        try {
+            if (store != null) {
+                store.logCancelReservation(isbn, memberId);
+            }
+            applyCancelReservation(isbn, memberId);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void logHold(Hold hold) {
+        logTransaction("BOOK_HELD: " + hold.isbn + " for member " + hold.memberId + " (Until: " + hold.expires + ")");
+    }
+
+    // State changes shared by the public methods and LibraryStore replay.
+    // These assume the caller has already validated the change and holds the matching
+    // book and member locks. They do not log or print. The public methods write the
+    // change to the store first and apply it only once that has succeeded, so a failed
+    // write leaves nothing in memory that a restart would lose.
+    void applyAddBook(String isbn, String title, String author, String genre) {
+        int genreCode = genreSymbols.intern(genre);
+        int authorCode = authorSymbols.intern(author);
+        Book book = new Book(isbn, title, authorSymbols.symbol(authorCode), genreSymbols.symbol(genreCode));
+        books.put(isbn, book);
+        BookCopies bookCopies = new BookCopies(1);
+        copies.put(isbn, bookCopies);
+        totalCopies.increment();
+        assignOrdinal(book, genreCode, authorCode);
+        refreshAvailability(isbn, bookCopies);
+        indexBook(book);
+    }
+
+    void applyRemoveBook(String isbn) {
+        reservations.remove(isbn);
+        Book book = books.remove(isbn);
+        totalCopies.add(-copies.remove(isbn).getCopyCount());
+        releaseOrdinal(isbn);
+        unindexBook(book);
+    }
+
+    void applyAddCopies(String isbn, int count) {
+        BookCopies bookCopies = copies.get(isbn);
+        bookCopies.addCopies(count);
+        totalCopies.add(count);
+        refreshAvailability(isbn, bookCopies);
+    }
+
+    void applyRemoveCopies(String isbn, int count) {
+        BookCopies bookCopies = copies.get(isbn);
+        bookCopies.removeFreeCopies(count);
+        totalCopies.add(-count);
+        refreshAvailability(isbn, bookCopies);
+    }
+
+    void applyAddMember(String memberId, String name, String email, String phoneNumber) {
+        Member member = new Member(memberId, name, email, phoneNumber);
+        members.put(memberId, member);
+        memberIds.add(memberId);
+        memberIndex.add(member);
+    }
+
+    void applyRemoveMember(String memberId) {
+        members.remove(memberId);
+        memberIds.remove(memberId);
+        memberIndex.remove(memberId);
+    }
+
+    // Issues the copy held for the member, ending the hold, or else the first free copy
+    void applyIssue(String isbn, String memberId, LocalDate due) {
+        BookCopies bookCopies = copies.get(isbn);
+        int copy = bookCopies.find(memberId, BookCopies.HELD);
+        if (copy < 0) {
+            copy = bookCopies.firstFree();
+        } else {
+            holds.remove(new Loan(isbn, memberId)).timer.cancel();
+        }
+
+        bookCopies.assign(copy, BookCopies.ISSUED, memberId, (int) due.toEpochDay());
+        Member member = members.get(memberId);
+        member.borrowBook(isbn);
+        if (member.getCurrentBorrowedCount() == 1) {
+            activeMembers.increment();
+        }
+        issuedCopies.increment();
+        Loan loan = new Loan(isbn, memberId);
+        addToDueDateIndex(loan, due);
+        scheduleReminders(loan, due);
+        refreshAvailability(isbn, bookCopies);
+    }
+
+    void applyReturn(String isbn, String memberId) {
+        BookCopies bookCopies = copies.get(isbn);
+        int copy = bookCopies.find(memberId, BookCopies.ISSUED);
+        LocalDate due = LocalDate.ofEpochDay(bookCopies.getDay(copy));
+
+        bookCopies.release(copy);
+        issuedCopies.decrement();
+        Loan loan = new Loan(isbn, memberId);
+        removeFromDueDateIndex(loan, due);
+        List<TimingWheel.Timer<DueDateReminder>> timers = reminderTimers.remove(loan);
+        if (timers != null) {
+            timers.forEach(TimingWheel.Timer::cancel);
         }
+        Member member = members.get(memberId);
+        if (member != null) {
+            member.returnBook(isbn);
+            if (member.getCurrentBorrowedCount() == 0) {
+                activeMembers.decrement();
+            }
+        }
+        refreshAvailability(isbn, bookCopies);
+    }
+
+    void applyReserve(String isbn, String memberId) {
+        reservations.computeIfAbsent(isbn, key -> new ArrayDeque<>()).add(memberId);
+    }
 
-        if (!member.canBorrowMore()) {
-            System.out.println("Member has reached maximum borrow limit (" + member.getMaxBorrowLimit() + " books)!");
-            return false;
+    void applyCancelReservation(String isbn, String memberId) {
+        Deque<String> queue = reservations.get(isbn);
+        if (queue != null && queue.remove(memberId) && queue.isEmpty()) {
+            reservations.remove(isbn);
         }
+    }
 
-        book.issueBook(memberId);
-        member.borrowBook(isbn);
-        logTransaction("BOOK_ISSUED: " + isbn + " to member " + memberId + " (Due: " + book.getDueDate() + ")");
-        System.out.println("✓ Book issued successfully!");
-        System.out.println("  Book: " + book.getTitle());
-        System.out.println("  Member: " + member.getName());
-        System.out.println("  Due Date: " + book.getDueDate());
-        return true;
+    // Holds the first copy on the shelf for the member, who leaves the title's queue if in it
+    void applyHold(String isbn, String memberId, LocalDate expires) {
+        applyCancelReservation(isbn, memberId);
+        BookCopies bookCopies = copies.get(isbn);
+        bookCopies.assign(bookCopies.firstFree(), BookCopies.HELD, memberId, (int) expires.toEpochDay());
+        Hold hold = new Hold(isbn, memberId, expires);
+        // The hold lasts through its expiry day and lapses the day after
+        hold.timer = holdExpiries.schedule(hold, expires.toEpochDay() + 1);
+        holds.put(new Loan(isbn, memberId), hold);
+        refreshAvailability(isbn, bookCopies);
     }
 
-    public boolean returnBook(String isbn) {
-        Book book = books.get(isbn);
+    void applyReleaseHold(String isbn, String memberId) {
+        holds.remove(new Loan(isbn, memberId)).timer.cancel();
+        BookCopies bookCopies = copies.get(isbn);
+        bookCopies.release(bookCopies.find(memberId, BookCopies.HELD));
+        refreshAvailability(isbn, bookCopies);
+    }
 
-        if (book == null) {
-            System.out.println("Book with ISBN " + isbn + " not found!");
-            return false;
+    // Thresholds that were already behind us before today are skipped, so replaying old
+    // loans at startup doesn't repeat reminders that went out before the restart
+    private void scheduleReminders(Loan loan, LocalDate due) {
+        long today = LocalDate.now().toEpochDay();
+        List<TimingWheel.Timer<DueDateReminder>> timers = new ArrayList<>(2);
+        for (DueDateReminder.Type type : DueDateReminder.Type.values()) {
+            DueDateReminder reminder = new DueDateReminder(type, loan.isbn, loan.memberId, due);
+            if (reminder.getTriggerDay() >= today) {
+                timers.add(reminderWheel.schedule(reminder, reminder.getTriggerDay()));
+            }
         }
-
-        if (book.isAvailable()) {
-            System.out.println("Book is not currently issued!");
-            return false;
+        if (!timers.isEmpty()) {
+            reminderTimers.put(loan, timers);
         }
+    }
 
-        String memberId = book.getIssuedTo();
-        Member member = members.get(memberId);
+    // Moves the reminder clock to the given day and hands over every reminder that came due
+    void advanceReminders(LocalDate day, Consumer<DueDateReminder> fired) {
+        reminderWheel.advanceTo(day.toEpochDay(), reminder -> {
+            Loan loan = new Loan(reminder.getIsbn(), reminder.getMemberId());
+            List<TimingWheel.Timer<DueDateReminder>> timers = reminderTimers.get(loan);
+            if (timers == null || timers.stream().noneMatch(timer -> timer.getItem() == reminder)) {
+                return; // returned after the wheel picked the reminder up
+            }
+            if (reminder.getType() == DueDateReminder.Type.OVERDUE) {
+                reminderTimers.remove(loan, timers); // nothing more is scheduled for this loan
+            }
+            fired.accept(reminder);
+        });
+    }
 
-        boolean wasOverdue = book.isOverdue();
-        book.returnBook();
+    // Hands an outcome to the event sink and returns it to the caller. Mutators call this from
+    // their public entry point once the do* body has released its locks, so a slow sink never
+    // holds up circulation on the same stripes.
+    private LibraryResult publish(LibraryResult result) {
+        eventSink.publish(result);
+        return result;
+    }
 
-        if (member != null) {
-            member.returnBook(isbn);
+    private static LibraryResult bookNotFound(String isbn) {
+        return LibraryResult.failure(LibraryResult.Status.NOT_FOUND, "Book with ISBN " + isbn + " not found!");
+    }
+
+    private static LibraryResult memberNotFound(String memberId) {
+        return LibraryResult.failure(LibraryResult.Status.NOT_FOUND, "Member with ID " + memberId + " not found!");
+    }
+
+    private static boolean isOverdue(LocalDate dueDate) {
+        return LocalDate.now().isAfter(dueDate);
+    }
+
+    // Persistence
+    public void saveSnapshot() {
+        if (store == null) {
+            throw new IllegalStateException("Library " + libraryName + " was not opened with a data directory");
         }
+        Lock lock = snapshotLock.writeLock();
+        lock.lock();
+        try {
+            store.writeSnapshot(members.values(), books, copies, reservations, loanHistory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write library snapshot", e);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        String overdueInfo = wasOverdue ? " (WAS OVERDUE)" : "";
-        logTransaction("BOOK_RETURNED: " + isbn + " from member " + memberId + overdueInfo);
-        System.out.println("✓ Book returned successfully!" + overdueInfo);
-        System.out.println("  Book: " + book.getTitle());
-        if (member != null) {
-            System.out.println("  Member: " + member.getName());
+    private void afterMutation() {
+        if (store != null && snapshotInterval > 0 && store.getLogRecordCount() >= snapshotInterval) {
+            saveSnapshot();
         }
-        return true;
     }
 
     // Search and Display Methods
+    // Catalogue listings read a published snapshot, so a long listing never holds a lock
+    // that circulation needs
     public void displayAllBooks() {
-        if (books.isEmpty()) {
+        CatalogueSnapshot catalogue = getCatalogueSnapshot();
+        if (catalogue.getTitleCount() == 0) {
             System.out.println("No books available in the library.");
             return;
         }
 
         System.out.println("\n=== ALL BOOKS IN LIBRARY ===");
-        books.values().forEach(System.out::println);
+        catalogue.forEach(entry -> System.out.println(entry.getBook()));
     }
 
     public void displayAvailableBooks() {
-        List<Book> availableBooks = books.values().stream()
-                .filter(Book::isAvailable)
-                .collect(Collectors.toList());
-
-        if (availableBooks.isEmpty()) {
+        Iterator<CatalogueSnapshot.Entry> availableBooks = getCatalogueSnapshot().streamShelved().iterator();
+        if (!availableBooks.hasNext()) {
             System.out.println("No books currently available.");
             return;
         }
 
         System.out.println("\n=== AVAILABLE BOOKS ===");
-        availableBooks.forEach(System.out::println);
+        availableBooks.forEachRemaining(entry -> System.out.println(entry.getBook()
+                + " | Copies available: " + entry.getAvailable() + " of " + entry.getCopies()));
     }
 
     public void displayIssuedBooks() {
-        List<Book> issuedBooks = books.values().stream()
-                .filter(book -> !book.isAvailable())
-                .collect(Collectors.toList());
-
-        if (issuedBooks.isEmpty()) {
+        Iterator<CatalogueSnapshot.Entry> issuedBooks = getCatalogueSnapshot().streamIssued().iterator();
+        if (!issuedBooks.hasNext()) {
             System.out.println("No books currently issued.");
             return;
         }
 
         System.out.println("\n=== ISSUED BOOKS ===");
-        for (Book book : issuedBooks) {
-            Member member = members.get(book.getIssuedTo());
-            String memberName = member != null ? member.getName() : "Unknown";
-            System.out.println(book + " | Member: " + memberName);
+        while (issuedBooks.hasNext()) {
+            Book book = issuedBooks.next().getBook();
+            List<String> borrowers = new ArrayList<>();
+            Lock bookLock = lockFor(bookLocks, book.getIsbn());
+            bookLock.lock();
+            try {
+                BookCopies bookCopies = copies.get(book.getIsbn());
+                for (int copy = 0; bookCopies != null && copy < bookCopies.getCopyCount(); copy++) {
+                    if (bookCopies.getState(copy) == BookCopies.ISSUED) {
+                        borrowers.add(bookCopies.getMember(copy));
+                    }
+                }
+            } finally {
+                bookLock.unlock();
+            }
+
+            for (String memberId : borrowers) {
+                Member member = members.get(memberId);
+                String memberName = member != null ? member.getName() : "Unknown";
+                System.out.println(book + " | Member: " + memberName);
+            }
         }
     }
 
@@ -198,35 +1235,35 @@ public class Library {
         }
 
         System.out.println("\n=== ALL MEMBERS ===");
-        members.values().forEach(System.out::println);
+        streamMembers().forEach(System.out::println);
     }
 
     public void displayOverdueBooks() {
-        List<Book> overdueBooks = books.values().stream()
-                .filter(Book::isOverdue)
-                .collect(Collectors.toList());
+        LocalDate today = LocalDate.now();
+        SortedMap<LocalDate, DueDay> overdue = dueDateIndex.headMap(today);
 
-        if (overdueBooks.isEmpty()) {
+        if (countOverdue(today) == 0) {
             System.out.println("No overdue books.");
             return;
         }
 
         System.out.println("\n=== OVERDUE BOOKS ===");
-        for (Book book : overdueBooks) {
-            Member member = members.get(book.getIssuedTo());
-            String memberName = member != null ? member.getName() : "Unknown";
-            long daysOverdue = LocalDate.now().toEpochDay() - book.getDueDate().toEpochDay();
-            System.out.println(book + " | Member: " + memberName + " | Days Overdue: " + daysOverdue);
+        for (Map.Entry<LocalDate, DueDay> entry : overdue.entrySet()) {
+            long daysOverdue = today.toEpochDay() - entry.getKey().toEpochDay();
+            for (Loan loan : entry.getValue()) {
+                Book book = books.get(loan.isbn);
+                if (book == null) {
+                    continue; // removed while we were listing
+                }
+                Member member = members.get(loan.memberId);
+                String memberName = member != null ? member.getName() : "Unknown";
+                System.out.println(book + " | Member: " + memberName + " | Days Overdue: " + daysOverdue);
+            }
         }
     }
 
     public void searchBooks(String query) {
-        List<Book> matchingBooks = books.values().stream()
-                .filter(book -> book.getTitle().toLowerCase().contains(query.toLowerCase()) ||
-                        book.getAuthor().toLowerCase().contains(query.toLowerCase()) ||
-                        book.getGenre().toLowerCase().contains(query.toLowerCase()) ||
-                        book.getIsbn().contains(query))
-                .collect(Collectors.toList());
+        List<Book> matchingBooks = findBooks(query);
 
         if (matchingBooks.isEmpty()) {
             System.out.println("No books found matching: " + query);
@@ -237,12 +1274,89 @@ public class Library {
         matchingBooks.forEach(System.out::println);
     }
 
+    // Every query term must match the start of some token (AND of prefix matches).
+    // Results are ranked by how many terms matched a whole token, then by title.
+    public List<Book> findBooks(String query) {
+        List<Book> results = new ArrayList<>();
+        Book exactIsbn = books.get(query.trim());
+        if (exactIsbn != null) {
+            results.add(exactIsbn);
+        }
+
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return results;
+        }
+
+        Map<String, Integer> scores = null;
+        for (String term : terms) {
+            Map<String, Integer> termScores = new HashMap<>();
+            for (Map.Entry<String, Set<String>> entry : prefixMatches(term).entrySet()) {
+                int weight = entry.getKey().length() == term.length() ? 2 : 1;
+                for (String isbn : entry.getValue()) {
+                    if (scores == null || scores.containsKey(isbn)) {
+                        termScores.merge(isbn, weight, Math::max);
+                    }
+                }
+            }
+            if (scores != null) {
+                for (Map.Entry<String, Integer> entry : termScores.entrySet()) {
+                    entry.setValue(entry.getValue() + scores.get(entry.getKey()));
+                }
+            }
+            scores = termScores;
+            if (scores.isEmpty()) {
+                return results;
+            }
+        }
+
+        Map<String, Integer> ranking = scores;
+        scores.keySet().stream()
+                .filter(isbn -> exactIsbn == null || !isbn.equals(exactIsbn.getIsbn()))
+                .map(books::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.<Book>comparingInt(book -> ranking.get(book.getIsbn())).reversed()
+                        .thenComparing(Book::getTitle))
+                .forEach(results::add);
+        return results;
+    }
+
+    // Exact (case-sensitive) genre or author matches, found by scanning the code columns of
+    // the published catalogue snapshot; ordinalLock is held only to publish changed chunks
+    public List<Book> findBooksByGenre(String genre) {
+        return scanCodes(true, genreSymbols.codeOf(genre));
+    }
+
+    public List<Book> findBooksByAuthor(String author) {
+        return scanCodes(false, authorSymbols.codeOf(author));
+    }
+
+    private List<Book> scanCodes(boolean genre, int code) {
+        if (code < 0) {
+            return new ArrayList<>();
+        }
+        return getCatalogueSnapshot().booksWithCode(genre, code);
+    }
+
+    // "Members who borrowed this also borrowed": up to limit titles still in the catalogue,
+    // most often borrowed by the same members first
+    public List<Book> recommendBooks(String isbn, int limit) {
+        List<Book> results = new ArrayList<>();
+        for (String other : loanHistory.recommend(isbn, limit)) {
+            Book book = books.get(other);
+            if (book != null) {
+                results.add(book);
+            }
+        }
+        return results;
+    }
+
+    LoanHistory getLoanHistory() {
+        return loanHistory;
+    }
+
     public void searchMembers(String query) {
-        List<Member> matchingMembers = members.values().stream()
-                .filter(member -> member.getName().toLowerCase().contains(query.toLowerCase()) ||
-                        member.getEmail().toLowerCase().contains(query.toLowerCase()) ||
-                        member.getMemberId().contains(query))
-                .collect(Collectors.toList());
+        List<Member> matchingMembers = findMembers(query, MEMBER_SEARCH_LIMIT);
 
         if (matchingMembers.isEmpty()) {
             System.out.println("No members found matching: " + query);
@@ -253,6 +1367,19 @@ public class Library {
         matchingMembers.forEach(System.out::println);
     }
 
+    // Up to limit members whose name, email or ID contains the query, or near misses when
+    // none does. Only members sharing trigrams with the query are looked at.
+    public List<Member> findMembers(String query, int limit) {
+        List<Member> results = new ArrayList<>();
+        for (String memberId : memberIndex.search(query, limit)) {
+            Member member = members.get(memberId);
+            if (member != null) {
+                results.add(member);
+            }
+        }
+        return results;
+    }
+
     public void getBookDetails(String isbn) {
         Book book = books.get(isbn);
         if (book == null) {
@@ -270,16 +1397,37 @@ public class Library {
             return;
         }
 
-        System.out.println(member.getDetailedInfo());
+        List<String> borrowedBooks;
+        Lock memberLock = lockFor(memberLocks, memberId);
+        memberLock.lock();
+        try {
+            System.out.println(member.getDetailedInfo());
+            borrowedBooks = new ArrayList<>(member.getBorrowedBooks());
+        } finally {
+            memberLock.unlock();
+        }
 
         // Show borrowed books details
-        if (!member.getBorrowedBooks().isEmpty()) {
+        if (!borrowedBooks.isEmpty()) {
             System.out.println("=== BORROWED BOOKS DETAILS ===");
-            for (String isbn : member.getBorrowedBooks()) {
+            for (String isbn : borrowedBooks) {
                 Book book = books.get(isbn);
-                if (book != null) {
-                    System.out.println("• " + book.getTitle() + " (Due: " + book.getDueDate() + ")");
-                    if (book.isOverdue()) {
+                LocalDate dueDate = null;
+                Lock bookLock = lockFor(bookLocks, isbn);
+                bookLock.lock();
+                try {
+                    BookCopies bookCopies = copies.get(isbn);
+                    int copy = bookCopies != null ? bookCopies.find(memberId, BookCopies.ISSUED) : -1;
+                    if (copy >= 0) {
+                        dueDate = LocalDate.ofEpochDay(bookCopies.getDay(copy));
+                    }
+                } finally {
+                    bookLock.unlock();
+                }
+
+                if (book != null && dueDate != null) {
+                    System.out.println("• " + book.getTitle() + " (Due: " + dueDate + ")");
+                    if (isOverdue(dueDate)) {
                         System.out.println("  *** OVERDUE ***");
                     }
                 }
@@ -294,33 +1442,76 @@ public class Library {
         System.out.println("Report Date: " + LocalDate.now());
         System.out.println("=====================================");
 
-        System.out.println("Total Books: " + books.size());
-        long availableBooks = books.values().stream().filter(Book::isAvailable).count();
-        long issuedBooks = books.size() - availableBooks;
-        System.out.println("Available Books: " + availableBooks);
-        System.out.println("Issued Books: " + issuedBooks);
-
-        long overdueBooks = books.values().stream().filter(Book::isOverdue).count();
-        System.out.println("Overdue Books: " + overdueBooks);
+        LibraryStatistics statistics = getStatistics();
+        System.out.println("Total Titles: " + statistics.getTitles());
+        System.out.println("Total Copies: " + statistics.getCopies());
+        System.out.println("Available Copies: " + statistics.getAvailableCopies());
+        System.out.println("Issued Copies: " + statistics.getIssuedCopies());
+        System.out.println("Copies On Hold: " + statistics.getHeldCopies());
+        System.out.println("Overdue Copies: " + statistics.getOverdueCopies());
 
-        System.out.println("\nTotal Members: " + members.size());
-        long activeMembers = members.values().stream().filter(member -> member.getCurrentBorrowedCount() > 0).count();
-        System.out.println("Active Members: " + activeMembers);
+        System.out.println("\nTotal Members: " + statistics.getMembers());
+        System.out.println("Active Members: " + statistics.getActiveMembers());
 
         // Most popular genres
-        Map<String, Long> genreCount = books.values().stream()
-                .collect(Collectors.groupingBy(Book::getGenre, Collectors.counting()));
-
-        if (!genreCount.isEmpty()) {
+        if (!statistics.getGenreCounts().isEmpty()) {
             System.out.println("\nGenre Distribution:");
-            genreCount.entrySet().stream()
-                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                    .forEach(entry -> System.out.println("  " + entry.getKey() + ": " + entry.getValue() + " books"));
+            statistics.getGenreCounts().forEach((genre, count) -> System.out.println("  " + genre + ": " + count + " books"));
         }
 
         System.out.println("=====================================");
     }
 
+    // Publishes the catalogue as it stands now. Only chunks changed since the previous call
+    // are copied, and circulation never waits for the copy; when nothing has changed the
+    // previous snapshot is returned as is.
+    public CatalogueSnapshot getCatalogueSnapshot() {
+        synchronized (ordinalLock) {
+            AvailabilityChunk[] live = availability;
+            boolean changed = false;
+            for (AvailabilityChunk chunk : live) {
+                changed |= chunk.dirty;
+            }
+            if (!changed) {
+                return publishedCatalogue;
+            }
+
+            int ordinalLimit = booksByOrdinal.size();
+            int chunkCount = (ordinalLimit + CatalogueSnapshot.CHUNK_SIZE - 1) >>> CatalogueSnapshot.CHUNK_BITS;
+            CatalogueSnapshot.Chunk[] chunks = new CatalogueSnapshot.Chunk[chunkCount];
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                chunks[chunk] = live[chunk].dirty ? copyChunk(chunk, live[chunk]) : publishedCatalogue.chunk(chunk);
+            }
+            publishedCatalogue = new CatalogueSnapshot(publishedCatalogue.getEpoch() + 1, chunks,
+                    ordinalLimit, bookOrdinals.size());
+            return publishedCatalogue;
+        }
+    }
+
+    // Reads the running counters; costs O(genres) however large the library is
+    public LibraryStatistics getStatistics() {
+        LocalDate today = LocalDate.now();
+        int[] histogram;
+        synchronized (ordinalLock) {
+            histogram = Arrays.copyOf(genreHistogram, genreSymbols.size());
+        }
+
+        Integer[] byCount = new Integer[histogram.length];
+        for (int code = 0; code < byCount.length; code++) {
+            byCount[code] = code;
+        }
+        Arrays.sort(byCount, (a, b) -> Integer.compare(histogram[b], histogram[a]));
+        Map<String, Long> genres = new LinkedHashMap<>();
+        for (int code : byCount) {
+            if (histogram[code] > 0) {
+                genres.put(genreSymbols.symbol(code), (long) histogram[code]);
+            }
+        }
+
+        return new LibraryStatistics(libraryName, today, books.size(), totalCopies.sum(), issuedCopies.sum(),
+                holds.size(), countOverdue(today), members.size(), activeMembers.sum(), genres);
+    }
+
     public void displayTransactionLog() {
         if (transactionLog.isEmpty()) {
             System.out.println("No transactions recorded.");
@@ -331,9 +1522,450 @@ public class Library {
         transactionLog.forEach(System.out::println);
     }
 
+    // Streams the last count journal entries instead of the whole log
+    public void displayRecentTransactions(int count) {
+        if (transactionLog.isEmpty()) {
+            System.out.println("No transactions recorded.");
+            return;
+        }
+
+        System.out.println("\n=== RECENT TRANSACTIONS ===");
+        transactionLog.tail(count, System.out::println);
+    }
+
+    // Paged Listings
+    // Each page comes with a token for the next one; pass null for the first page. Books are
+    // listed by ordinal, members by ID and transactions by sequence number, so paging resumes
+    // where the previous page stopped even when the library changes in between. Streams are
+    // produced lazily, so a caller walking millions of records holds only the current one.
+    public Stream<CatalogueSnapshot.Entry> streamBooks() {
+        return getCatalogueSnapshot().stream(0);
+    }
+
+    public Stream<Member> streamMembers() {
+        return streamMembersAfter(null);
+    }
+
+    public Stream<TransactionJournal.Entry> streamTransactions() {
+        return transactionLog.stream(0);
+    }
+
+    public Page<CatalogueSnapshot.Entry> getBooksPage(String pageToken, int pageSize) {
+        long from = tokenPosition(pageToken, 'B', Integer.MAX_VALUE);
+        Stream<CatalogueSnapshot.Entry> entries = getCatalogueSnapshot().stream((int) from);
+        return nextPage(entries.iterator(), pageSize, entry -> "B" + (entry.getOrdinal() + 1));
+    }
+
+    public Page<Member> getMembersPage(String pageToken, int pageSize) {
+        return nextPage(streamMembersAfter(tokenValue(pageToken, 'M')).iterator(), pageSize,
+                member -> "M" + member.getMemberId());
+    }
+
+    public Page<TransactionJournal.Entry> getTransactionsPage(String pageToken, int pageSize) {
+        Stream<TransactionJournal.Entry> entries = transactionLog.stream(tokenPosition(pageToken, 'T', Long.MAX_VALUE));
+        return nextPage(entries.iterator(), pageSize, entry -> "T" + (entry.getSequence() + 1));
+    }
+
+    // Members with IDs after the given one, or all of them for null
+    private Stream<Member> streamMembersAfter(String memberId) {
+        NavigableSet<String> ids = memberId == null ? memberIds : memberIds.tailSet(memberId, false);
+        return ids.stream().map(members::get).filter(Objects::nonNull);
+    }
+
+    // Takes up to pageSize items; the token of the last one leads to the next page if anything is left
+    private static <T> Page<T> nextPage(Iterator<T> source, int pageSize, Function<T, String> tokenAfter) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        List<T> items = new ArrayList<>(Math.min(pageSize, 1024));
+        while (items.size() < pageSize && source.hasNext()) {
+            items.add(source.next());
+        }
+        return new Page<>(items, source.hasNext() ? tokenAfter.apply(items.get(items.size() - 1)) : null);
+    }
+
+    // The position a token encodes, or null for the first page
+    private static String tokenValue(String pageToken, char kind) {
+        if (pageToken == null) {
+            return null;
+        }
+        if (pageToken.isEmpty() || pageToken.charAt(0) != kind) {
+            throw new IllegalArgumentException("Not a valid page token: " + pageToken);
+        }
+        return pageToken.substring(1);
+    }
+
+    // The numeric position a token encodes, or 0 for the first page
+    private static long tokenPosition(String pageToken, char kind, long max) {
+        String value = tokenValue(pageToken, kind);
+        if (value == null) {
+            return 0;
+        }
+        long position = -1;
+        if (!value.isEmpty() && value.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            try {
+                position = Long.parseLong(value);
+            } catch (NumberFormatException tooLong) {
+                // falls through to the rejection below
+            }
+        }
+        if (position < 0 || position > max) {
+            throw new IllegalArgumentException("Not a valid page token: " + pageToken);
+        }
+        return position;
+    }
+
+    public TransactionJournal getTransactionJournal() {
+        return transactionLog;
+    }
+
     private void logTransaction(String transaction) {
-        String timestamp = LocalDate.now() + " - " + transaction;
-        transactionLog.add(timestamp);
+        transactionLog.append(LocalDate.now(), transaction);
+    }
+
+    // Ordinal and due date index maintenance
+    private void assignOrdinal(Book book, int genreCode, int authorCode) {
+        synchronized (ordinalLock) {
+            Integer ordinal = freeOrdinals.poll();
+            if (ordinal == null) {
+                ordinal = booksByOrdinal.size();
+                booksByOrdinal.add(book);
+                if (ordinal == genreColumn.length) {
+                    genreColumn = Arrays.copyOf(genreColumn, ordinal * 2);
+                    authorColumn = Arrays.copyOf(authorColumn, ordinal * 2);
+                }
+                int chunk = ordinal >>> CatalogueSnapshot.CHUNK_BITS;
+                if (chunk == availability.length) {
+                    AvailabilityChunk[] grown = Arrays.copyOf(availability, chunk + 1);
+                    grown[chunk] = new AvailabilityChunk();
+                    availability = grown;
+                }
+            } else {
+                booksByOrdinal.set(ordinal, book);
+            }
+            bookOrdinals.put(book.getIsbn(), ordinal);
+
+            genreColumn[ordinal] = genreCode;
+            authorColumn[ordinal] = authorCode;
+            if (genreCode >= genreHistogram.length) {
+                genreHistogram = Arrays.copyOf(genreHistogram, Math.max(genreCode + 1, genreHistogram.length * 2));
+            }
+            genreHistogram[genreCode]++;
+            availability[ordinal >>> CatalogueSnapshot.CHUNK_BITS].dirty = true;
+        }
+    }
+
+    private void releaseOrdinal(String isbn) {
+        synchronized (ordinalLock) {
+            int ordinal = bookOrdinals.remove(isbn);
+            genreHistogram[genreColumn[ordinal]]--;
+            booksByOrdinal.set(ordinal, null);
+            availability[ordinal >>> CatalogueSnapshot.CHUNK_BITS].set(ordinal, 0, 0, 0);
+            freeOrdinals.push(ordinal);
+        }
+    }
+
+    // Brings the title's counts in line with its copies after any change to them. The caller
+    // holds the book's lock, which keeps the ordinal assigned; no library-wide lock is taken.
+    private void refreshAvailability(String isbn, BookCopies bookCopies) {
+        int ordinal = bookOrdinals.get(isbn);
+        availability[ordinal >>> CatalogueSnapshot.CHUNK_BITS].set(ordinal, bookCopies.getCopyCount(),
+                bookCopies.getFreeCount(), bookCopies.getIssuedCount());
+    }
+
+    // Copies one chunk of ordinals out of the live columns. Caller holds ordinalLock. The
+    // dirty flag is cleared before the counts are read, so a change that lands during the
+    // copy flags the chunk again and is picked up by the next publish.
+    private CatalogueSnapshot.Chunk copyChunk(int chunk, AvailabilityChunk live) {
+        live.dirty = false;
+        int from = chunk << CatalogueSnapshot.CHUNK_BITS;
+        int to = from + CatalogueSnapshot.CHUNK_SIZE;
+        Book[] chunkBooks = new Book[CatalogueSnapshot.CHUNK_SIZE];
+        for (int ordinal = from; ordinal < Math.min(to, booksByOrdinal.size()); ordinal++) {
+            chunkBooks[ordinal - from] = booksByOrdinal.get(ordinal);
+        }
+        int[] copies = new int[CatalogueSnapshot.CHUNK_SIZE];
+        int[] free = new int[CatalogueSnapshot.CHUNK_SIZE];
+        int[] issued = new int[CatalogueSnapshot.CHUNK_SIZE];
+        long[] shelvedMask = new long[CatalogueSnapshot.CHUNK_WORDS];
+        long[] issuedMask = new long[CatalogueSnapshot.CHUNK_WORDS];
+        for (int slot = 0; slot < CatalogueSnapshot.CHUNK_SIZE; slot++) {
+            long counts = live.counts.get(slot);
+            copies[slot] = AvailabilityChunk.copies(counts);
+            free[slot] = AvailabilityChunk.free(counts);
+            issued[slot] = AvailabilityChunk.issued(counts);
+            if (free[slot] > 0) {
+                shelvedMask[slot >>> 6] |= 1L << slot;
+            }
+            if (issued[slot] > 0) {
+                issuedMask[slot >>> 6] |= 1L << slot;
+            }
+        }
+        return new CatalogueSnapshot.Chunk(chunkBooks, Arrays.copyOfRange(genreColumn, from, to),
+                Arrays.copyOfRange(authorColumn, from, to), copies, free, issued, shelvedMask, issuedMask);
+    }
+
+    private void addToDueDateIndex(Loan loan, LocalDate dueDate) {
+        DueDay day = dueDateIndex.computeIfAbsent(dueDate, date -> new DueDay());
+        day.addLoan(loan, overdueLoans);
+        // A day created after the roll went past it was not seen by the roll; count it here.
+        // If the roll is under way this read of overdueFrom is the old day, which means the
+        // entry was in the index before the roll started walking it.
+        if (dueDate.isBefore(overdueFrom)) {
+            day.countOverdue(overdueLoans);
+        }
+    }
+
+    private void removeFromDueDateIndex(Loan loan, LocalDate dueDate) {
+        DueDay day = dueDateIndex.get(dueDate);
+        if (day != null) {
+            day.removeLoan(loan, overdueLoans);
+        }
+    }
+
+    // Adds the days that have fallen due since the last call, so the count is brought up
+    // to date in time proportional to the days elapsed, not the loans. Only statistics
+    // readers take overdueRoll, so that overdueFrom never moves backwards.
+    private long countOverdue(LocalDate today) {
+        synchronized (overdueRoll) {
+            LocalDate from = overdueFrom;
+            if (today.isAfter(from)) {
+                overdueFrom = today;
+                for (DueDay day : dueDateIndex.subMap(from, today).values()) {
+                    day.countOverdue(overdueLoans);
+                }
+            }
+        }
+        return overdueLoans.sum();
+    }
+
+    // Search index maintenance
+    private void indexBook(Book book) {
+        Set<String> tokens = bookTokens(book);
+        synchronized (searchIndex) {
+            for (String token : tokens) {
+                searchIndex.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(book.getIsbn());
+            }
+        }
+    }
+
+    private void unindexBook(Book book) {
+        Set<String> tokens = bookTokens(book);
+        synchronized (searchIndex) {
+            for (String token : tokens) {
+                Set<String> isbns = searchIndex.get(token);
+                if (isbns != null) {
+                    isbns.remove(book.getIsbn());
+                    if (isbns.isEmpty()) {
+                        searchIndex.remove(token);
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<String> bookTokens(Book book) {
+        Set<String> tokens = new HashSet<>();
+        tokens.addAll(tokenize(book.getTitle()));
+        tokens.addAll(tokenize(book.getAuthor()));
+        tokens.addAll(tokenize(book.getGenre()));
+        tokens.addAll(tokenize(book.getIsbn()));
+        return tokens;
+    }
+
+    private SortedMap<String, Set<String>> prefixMatches(String prefix) {
+        return searchIndex.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    /**
+     * Hears about members registered at or removed from a library, e.g. to route member IDs
+     * to branches. Called while the member's lock is held, so it must be quick.
+     */
+    interface MemberListener {
+        void membershipChanged(String memberId, boolean registered);
+    }
+
+    private static class Hold {
+        private final String isbn;
+        private final String memberId;
+        private final LocalDate expires;
+        private TimingWheel.Timer<Hold> timer;
+
+        Hold(String isbn, String memberId, LocalDate expires) {
+            this.isbn = isbn;
+            this.memberId = memberId;
+            this.expires = expires;
+        }
+    }
+
+    // One member's copy of one title; identifies a loan or a hold
+    static class Loan {
+        private final String isbn;
+        private final String memberId;
+
+        Loan(String isbn, String memberId) {
+            this.isbn = isbn;
+            this.memberId = memberId;
+        }
+
+        String getIsbn() {
+            return isbn;
+        }
+
+        String getMemberId() {
+            return memberId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Loan)) {
+                return false;
+            }
+            Loan loan = (Loan) other;
+            return isbn.equals(loan.isbn) && memberId.equals(loan.memberId);
+        }
+
+        @Override
+        public int hashCode() {
+            return isbn.hashCode() * 31 + memberId.hashCode();
+        }
+    }
+
+    // Live copy counts for CatalogueSnapshot.CHUNK_SIZE ordinals, each slot packing copies,
+    // free and issued into one long so a title's counts are always read as a set
+    private static class AvailabilityChunk {
+        private static final int COUNT_BITS = 21;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+        final AtomicLongArray counts = new AtomicLongArray(CatalogueSnapshot.CHUNK_SIZE);
+        volatile boolean dirty;
+
+        void set(int ordinal, int copies, int free, int issued) {
+            counts.set(ordinal & (CatalogueSnapshot.CHUNK_SIZE - 1),
+                    (long) copies << 2 * COUNT_BITS | (long) free << COUNT_BITS | issued);
+            if (!dirty) {
+                dirty = true;
+            }
+        }
+
+        static int copies(long counts) {
+            return (int) (counts >>> 2 * COUNT_BITS & COUNT_MASK);
+        }
+
+        static int free(long counts) {
+            return (int) (counts >>> COUNT_BITS & COUNT_MASK);
+        }
+
+        static int issued(long counts) {
+            return (int) (counts & COUNT_MASK);
+        }
+    }
+
+    // The loans due on one day. state holds the number of loans plus COUNTED once the day
+    // has been added to the overdue count; a loan that comes or goes afterwards adjusts the
+    // count itself. Both sides go through state, so every loan is counted exactly once.
+    private static class DueDay extends AbstractSet<Loan> {
+        private static final long COUNTED = 1L << 62;
+
+        private final Set<Loan> loans = ConcurrentHashMap.newKeySet();
+        private final AtomicLong state = new AtomicLong();
+
+        void addLoan(Loan loan, LongAdder overdue) {
+            if (loans.add(loan) && (state.getAndIncrement() & COUNTED) != 0) {
+                overdue.increment();
+            }
+        }
+
+        void removeLoan(Loan loan, LongAdder overdue) {
+            if (loans.remove(loan) && (state.getAndDecrement() & COUNTED) != 0) {
+                overdue.decrement();
+            }
+        }
+
+        void countOverdue(LongAdder overdue) {
+            long before = state.getAndUpdate(current -> current | COUNTED);
+            if ((before & COUNTED) == 0) {
+                overdue.add(before);
+            }
+        }
+
+        @Override
+        public Iterator<Loan> iterator() {
+            return Collections.unmodifiableSet(loans).iterator();
+        }
+
+        @Override
+        public int size() {
+            return loans.size();
+        }
+    }
+
+    private static ReentrantLock[] createLocks() {
+        ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private static Lock lockFor(ReentrantLock[] locks, String key) {
+        int hash = key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // Loans due before the given day, grouped by due date. This is a read-only live view:
+    // loans issued or returned while it is being walked may or may not show up.
+    SortedMap<LocalDate, Set<Loan>> getLoansDueBefore(LocalDate day) {
+        return Collections.<LocalDate, Set<Loan>>unmodifiableSortedMap(dueDateIndex.headMap(day));
+    }
+
+    // The lock guarding this ISBN's circulation state. Holding it keeps every method of this
+    // library away from the title; it is reentrant, so the holder can still call them.
+    Lock bookLock(String isbn) {
+        return lockFor(bookLocks, isbn);
+    }
+
+    // Runs the action while every mutation waits, so it sees members, books and loans as one
+    // consistent state. The action must only read; mutating methods would wait for it forever.
+    <T> T readConsistent(Supplier<T> action) {
+        Lock lock = snapshotLock.writeLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isPersistent() {
+        return store != null;
+    }
+
+    Book getBook(String isbn) {
+        return books.get(isbn);
+    }
+
+    Member getMember(String memberId) {
+        return members.get(memberId);
     }
 
     // Utility methods
@@ -348,4 +1980,25 @@ public class Library {
     public String getLibraryName() {
         return libraryName;
     }
+
+    public void setEventSink(LibraryEventSink eventSink) {
+        this.eventSink = Objects.requireNonNull(eventSink);
+    }
+
+    // LibraryNetwork routes members to their branch with this
+    void setMemberListener(MemberListener memberListener) {
+        this.memberListener = memberListener;
+    }
+
+    @Override
+    public void close() {
+        try {
+            transactionLog.close();
+            if (store != null) {
+                store.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close library storage", e);
+        }
+    }
 }
\ No newline at end of file
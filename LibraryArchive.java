@@ -0,0 +1,516 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Exports a library's members, catalogue and loans to a columnar binary file, and loads
+ * such a file into a new library. Each table is cut into blocks of rows and every block
+ * stores its columns one after another: strings are dictionary encoded within the block
+ * when that is smaller, copy counts are varints and due dates are varint deltas with loans
+ * in due-date order. Every block carries a CRC32. Blocks are encoded on a pool of threads,
+ * and on import they are checked and decoded in parallel straight out of the mapped file.
+ *
+ * Holds and waiting lists are not exported, the same as in LibraryStore snapshots.
+ */
+public class LibraryArchive {
+    private static final int MAGIC = 0x4C494258; // "LIBX"
+    private static final int VERSION = 1;
+    private static final int DEFAULT_BLOCK_ROWS = 65_536;
+
+    // Tables, in the order they are written and loaded
+    private static final byte MEMBERS = 1;
+    private static final byte BOOKS = 2;
+    private static final byte LOANS = 3;
+
+    // String column encodings
+    private static final byte PLAIN = 0;
+    private static final byte DICTIONARY = 1;
+
+    // File header: magic | version | member count | book count | loan count
+    private static final int FILE_HEADER_SIZE = 20;
+    // Block header: table (1) | payload length (4) | CRC32 of table and payload (4)
+    private static final int BLOCK_HEADER_SIZE = 9;
+
+    private final int threads;
+    private final int blockRows;
+
+    public LibraryArchive() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_ROWS);
+    }
+
+    public LibraryArchive(int threads, int blockRows) {
+        if (threads <= 0 || blockRows <= 0) {
+            throw new IllegalArgumentException("threads and blockRows must be positive");
+        }
+        this.threads = threads;
+        this.blockRows = blockRows;
+    }
+
+    // Writes the library as it stands to file, replacing any earlier export there.
+    // Mutations wait only while the rows are gathered, not while blocks are encoded and written.
+    public Summary export(Library library, Path file) throws IOException {
+        long started = System.nanoTime();
+        Tables tables = library.readConsistent(() -> Tables.of(library));
+
+        List<Callable<byte[]>> blocks = new ArrayList<>();
+        for (int from = 0; from < tables.members.length; from += blockRows) {
+            int start = from;
+            int end = Math.min(from + blockRows, tables.members.length);
+            blocks.add(() -> encodeMembers(tables.members, start, end));
+        }
+        for (int from = 0; from < tables.books.length; from += blockRows) {
+            int start = from;
+            int end = Math.min(from + blockRows, tables.books.length);
+            blocks.add(() -> encodeBooks(tables.books, start, end));
+        }
+        for (int from = 0; from < tables.loanDays.length; from += blockRows) {
+            int start = from;
+            int end = Math.min(from + blockRows, tables.loanDays.length);
+            blocks.add(() -> encodeLoans(tables, start, end));
+        }
+
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tables.members.length);
+            out.writeInt(tables.books.length);
+            out.writeInt(tables.loanDays.length);
+
+            // A bounded number of blocks are encoded ahead of the one being written
+            CRC32 crc = new CRC32();
+            Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            for (Callable<byte[]> block : blocks) {
+                inFlight.add(pool.submit(block));
+                if (inFlight.size() > threads * 2) {
+                    writeBlock(out, await(inFlight.remove()), crc);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writeBlock(out, await(inFlight.remove()), crc);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return new Summary(file, tables.members.length, tables.books.length, tables.loanDays.length,
+                Files.size(file), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Loads an export into a library that has no members or books yet and is not in use by
+    // other threads, such as one just returned by Library.open. A persistent library writes
+    // a snapshot of the imported state at the end instead of logging every row.
+    public Summary importInto(Library library, Path file) throws IOException {
+        if (library.getTotalBooks() > 0 || library.getTotalMembers() > 0) {
+            throw new IllegalStateException("Library " + library.getLibraryName() + " is not empty");
+        }
+        long started = System.nanoTime();
+        long[] expected = new long[LOANS + 1];
+        long[] loaded = new long[LOANS + 1];
+        long size;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < FILE_HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Unrecognized library archive: " + file);
+            }
+            for (int table = MEMBERS; table <= LOANS; table++) {
+                expected[table] = in.getInt();
+            }
+
+            // Blocks are checked and decoded in parallel but applied in file order,
+            // so every member and book is in place before the loans that refer to them
+            Deque<Future<Block>> inFlight = new ArrayDeque<>();
+            while (in.hasRemaining()) {
+                int offset = in.position();
+                if (in.remaining() < BLOCK_HEADER_SIZE) {
+                    throw new IOException("Truncated block at offset " + offset + " of " + file);
+                }
+                byte table = in.get();
+                int length = in.getInt();
+                int expectedCrc = in.getInt();
+                if (table < MEMBERS || table > LOANS || length < 0 || length > in.remaining()) {
+                    throw new IOException("Corrupt block header at offset " + offset + " of " + file);
+                }
+                ByteBuffer payload = in.slice(in.position(), length);
+                in.position(in.position() + length);
+                inFlight.add(pool.submit(() -> decode(table, payload, expectedCrc, offset)));
+                if (inFlight.size() > threads * 2) {
+                    apply(library, await(inFlight.remove()), loaded);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                apply(library, await(inFlight.remove()), loaded);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (!Arrays.equals(expected, loaded)) {
+            throw new IOException("Library archive " + file + " is incomplete: expected " + expected[MEMBERS]
+                    + " members, " + expected[BOOKS] + " books and " + expected[LOANS] + " loans");
+        }
+        if (library.isPersistent()) {
+            library.saveSnapshot();
+        }
+        return new Summary(file, loaded[MEMBERS], loaded[BOOKS], loaded[LOANS], size,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Encoding
+    private static byte[] encodeMembers(Member[] members, int start, int end) {
+        Encoder out = new Encoder(MEMBERS, end - start);
+        out.strings(start, end, i -> members[i].getMemberId());
+        out.strings(start, end, i -> members[i].getName());
+        out.strings(start, end, i -> members[i].getEmail());
+        out.strings(start, end, i -> members[i].getPhoneNumber());
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeBooks(CatalogueSnapshot.Entry[] books, int start, int end) {
+        Encoder out = new Encoder(BOOKS, end - start);
+        out.strings(start, end, i -> books[i].getBook().getIsbn());
+        out.strings(start, end, i -> books[i].getBook().getTitle());
+        out.strings(start, end, i -> books[i].getBook().getAuthor());
+        out.strings(start, end, i -> books[i].getBook().getGenre());
+        for (int i = start; i < end; i++) {
+            out.varint(books[i].getCopies());
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeLoans(Tables tables, int start, int end) {
+        Encoder out = new Encoder(LOANS, end - start);
+        out.strings(start, end, i -> tables.loanIsbns[i]);
+        out.strings(start, end, i -> tables.loanMembers[i]);
+        // Loans are in due-date order, so most deltas fit in a byte
+        long previous = 0;
+        for (int i = start; i < end; i++) {
+            out.varint(zigzag(tables.loanDays[i] - previous));
+            previous = tables.loanDays[i];
+        }
+        return out.toByteArray();
+    }
+
+    // The first byte of an encoded block is its table; the rest is the payload
+    private static void writeBlock(DataOutputStream out, byte[] block, CRC32 crc) throws IOException {
+        crc.reset();
+        crc.update(block);
+        out.writeByte(block[0]);
+        out.writeInt(block.length - 1);
+        out.writeInt((int) crc.getValue());
+        out.write(block, 1, block.length - 1);
+    }
+
+    // Decoding
+    private static Block decode(byte table, ByteBuffer payload, int expectedCrc, int offset) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(table);
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Checksum mismatch in block at offset " + offset);
+        }
+
+        Decoder in = new Decoder(payload);
+        int rows = (int) in.varint();
+        Block block = new Block(table, rows);
+        int stringColumns = table == LOANS ? 2 : 4;
+        for (int column = 0; column < stringColumns; column++) {
+            block.strings.add(in.strings(rows));
+        }
+        if (table == BOOKS) {
+            for (int row = 0; row < rows; row++) {
+                block.numbers[row] = in.varint();
+            }
+        } else if (table == LOANS) {
+            long day = 0;
+            for (int row = 0; row < rows; row++) {
+                day += unzigzag(in.varint());
+                block.numbers[row] = day;
+            }
+        }
+        return block;
+    }
+
+    private static void apply(Library library, Block block, long[] loaded) throws IOException {
+        String[] first = block.strings.get(0);
+        String[] second = block.strings.get(1);
+        for (int row = 0; row < block.rows; row++) {
+            if (block.table == MEMBERS) {
+                if (library.getMember(first[row]) != null) {
+                    throw new IOException("Member " + first[row] + " appears twice in the archive");
+                }
+                library.applyAddMember(first[row], second[row], block.strings.get(2)[row], block.strings.get(3)[row]);
+            } else if (block.table == BOOKS) {
+                if (library.getBook(first[row]) != null) {
+                    throw new IOException("Book " + first[row] + " appears twice in the archive");
+                }
+                library.applyAddBook(first[row], second[row], block.strings.get(2)[row], block.strings.get(3)[row]);
+                if (block.numbers[row] > 1) {
+                    library.applyAddCopies(first[row], (int) block.numbers[row] - 1);
+                }
+            } else {
+                if (library.getMember(second[row]) == null || library.getAvailableCopyCount(first[row]) == 0) {
+                    throw new IOException("Loan of " + first[row] + " to " + second[row]
+                            + " has no matching member or free copy in the archive");
+                }
+                library.applyIssue(first[row], second[row], LocalDate.ofEpochDay(block.numbers[row]));
+            }
+        }
+        loaded[block.table] += block.rows;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Archive interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Archive block failed", e.getCause());
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Rows gathered while mutations wait; loans are flattened in due-date order
+    private static class Tables {
+        Member[] members;
+        CatalogueSnapshot.Entry[] books;
+        String[] loanIsbns;
+        String[] loanMembers;
+        long[] loanDays;
+
+        static Tables of(Library library) {
+            Tables tables = new Tables();
+            tables.members = library.streamMembers().toArray(Member[]::new);
+            tables.books = library.streamBooks().toArray(CatalogueSnapshot.Entry[]::new);
+
+            SortedMap<LocalDate, Set<Library.Loan>> loans = library.getLoansDueBefore(LocalDate.MAX);
+            int count = 0;
+            for (Set<Library.Loan> due : loans.values()) {
+                count += due.size();
+            }
+            tables.loanIsbns = new String[count];
+            tables.loanMembers = new String[count];
+            tables.loanDays = new long[count];
+            int row = 0;
+            for (Map.Entry<LocalDate, Set<Library.Loan>> due : loans.entrySet()) {
+                for (Library.Loan loan : due.getValue()) {
+                    tables.loanIsbns[row] = loan.getIsbn();
+                    tables.loanMembers[row] = loan.getMemberId();
+                    tables.loanDays[row++] = due.getKey().toEpochDay();
+                }
+            }
+            return tables;
+        }
+    }
+
+    // One decoded block: its string columns in order, plus copy counts or due days
+    private static class Block {
+        final byte table;
+        final int rows;
+        final List<String[]> strings = new ArrayList<>(4);
+        final long[] numbers;
+
+        Block(byte table, int rows) {
+            this.table = table;
+            this.rows = rows;
+            this.numbers = table == MEMBERS ? null : new long[rows];
+        }
+    }
+
+    // Growable byte buffer for one block, starting with the table and row count
+    private static class Encoder {
+        private byte[] bytes = new byte[4096];
+        private int size;
+
+        Encoder(byte table, int rows) {
+            bytes[size++] = table;
+            varint(rows);
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        // Writes a dictionary of the block's distinct values and a code per row, or just
+        // the values when most of them are distinct and a dictionary would only add codes
+        void strings(int start, int end, IntFunction<String> column) {
+            Map<String, Integer> codes = new HashMap<>();
+            for (int i = start; i < end; i++) {
+                codes.putIfAbsent(column.apply(i), codes.size());
+            }
+            if (codes.size() * 2 > end - start) {
+                ensure(1);
+                bytes[size++] = PLAIN;
+                for (int i = start; i < end; i++) {
+                    string(column.apply(i));
+                }
+                return;
+            }
+
+            ensure(1);
+            bytes[size++] = DICTIONARY;
+            String[] dictionary = new String[codes.size()];
+            codes.forEach((value, code) -> dictionary[code] = value);
+            varint(dictionary.length);
+            for (String value : dictionary) {
+                string(value);
+            }
+            for (int i = start; i < end; i++) {
+                varint(codes.get(column.apply(i)));
+            }
+        }
+
+        private void string(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    // Reads a block payload in place from the mapped file
+    private static class Decoder {
+        private final ByteBuffer in;
+        private byte[] scratch = new byte[256];
+
+        Decoder(ByteBuffer in) {
+            this.in = in;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        String[] strings(int rows) throws IOException {
+            String[] values = new String[rows];
+            byte encoding = in.get();
+            if (encoding == PLAIN) {
+                for (int row = 0; row < rows; row++) {
+                    values[row] = string();
+                }
+            } else if (encoding == DICTIONARY) {
+                String[] dictionary = new String[(int) varint()];
+                for (int code = 0; code < dictionary.length; code++) {
+                    dictionary[code] = string();
+                }
+                for (int row = 0; row < rows; row++) {
+                    values[row] = dictionary[(int) varint()];
+                }
+            } else {
+                throw new IOException("Unknown string column encoding: " + encoding);
+            }
+            return values;
+        }
+
+        private String string() {
+            int length = (int) varint();
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            in.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Row counts and timing for one export or import.
+     */
+    public static class Summary {
+        private final Path file;
+        private final long members;
+        private final long books;
+        private final long loans;
+        private final long bytes;
+        private final long elapsedMillis;
+
+        Summary(Path file, long members, long books, long loans, long bytes, long elapsedMillis) {
+            this.file = file;
+            this.members = members;
+            this.books = books;
+            this.loans = loans;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getMemberCount() {
+            return members;
+        }
+
+        public long getBookCount() {
+            return books;
+        }
+
+        public long getLoanCount() {
+            return loans;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return file + ": " + members + " members, " + books + " books, " + loans + " loans, "
+                    + bytes + " bytes in " + elapsedMillis + " ms";
+        }
+    }
+}
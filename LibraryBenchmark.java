@@ -0,0 +1,311 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * Microbenchmarks for the Library hot paths at several catalogue sizes.
+ *
+ *   java -Xmx16g LibraryBenchmark [--forks n] [--baseline file] [size ...]
+ *
+ * Sizes default to 10k, 100k and 1M books; pass 10000000 for the 10M run (needs a large heap).
+ * Each size gets a synthetic catalogue from a fixed seed, with one member per ten books and
+ * a fifth of the books already on loan. Every benchmark is warmed up before it is measured,
+ * results are fed into a sink so the JIT can't drop the work, and console output from the
+ * display methods is discarded while they are timed.
+ *
+ * Every size runs in --forks fresh JVMs (3 by default, started with this JVM's options and
+ * class path), so one unlucky JIT or heap layout doesn't decide the result; --forks 0 runs
+ * in this JVM instead. Each benchmark reports the mean time per call over every measured
+ * round of every fork, and the half-width of its 99% confidence interval. Output is
+ * tab-separated with a fixed column order, so a run saved to a file can be compared later:
+ *
+ *   java LibraryBenchmark > before.tsv
+ *   (change something, rebuild)
+ *   java LibraryBenchmark --baseline before.tsv
+ *
+ * With a baseline each line also gets the change in mean and a verdict: "slower" or
+ * "faster" when the two confidence intervals don't overlap, "same" when they do. The run
+ * exits with status 2 if anything got slower, so a script can track regressions.
+ */
+public class LibraryBenchmark {
+    private static final int DEFAULT_FORKS = 3;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final long ROUND_NANOS = 500_000_000L;
+    private static final long SEED = 42;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+    // Marks a forked JVM, which prints raw round times for the parent instead of the table
+    private static final String WORKER = "--worker";
+    // Two-sided 99% Student t quantiles for 1 to 30 degrees of freedom
+    private static final double[] T_99 = {
+            63.657, 9.925, 5.841, 4.604, 4.032, 3.707, 3.499, 3.355, 3.250, 3.169,
+            3.106, 3.055, 3.012, 2.977, 2.947, 2.921, 2.898, 2.878, 2.861, 2.845,
+            2.831, 2.819, 2.807, 2.797, 2.787, 2.779, 2.771, 2.763, 2.756, 2.750};
+
+    private static final String[] WORDS = {
+            "shadow", "river", "empire", "garden", "silent", "winter", "crown", "glass", "journey", "ocean",
+            "secret", "iron", "forest", "storm", "golden", "night", "letters", "machine", "island", "memory",
+            "fire", "dream", "stone", "city", "house", "war", "star", "song", "tide", "wolf"};
+    private static final String[] GENRES = {
+            "Fiction", "Mystery", "Science Fiction", "Fantasy", "Biography", "History", "Romance", "Thriller",
+            "Poetry", "Travel", "Science", "Philosophy", "Horror", "Children", "Cooking", "Art"};
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+            "Amir", "Priya", "Chen", "Fatima", "Lucas", "Sofia", "Kenji", "Aisha", "Mateo", "Olga"};
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Khan", "Patel", "Wang", "Kim", "Nguyen", "Silva", "Muller", "Rossi", "Novak", "Sato"};
+
+    private static long sink;
+    // Round times in ns/op by benchmark and size, in the order the benchmarks ran
+    private static final Map<String, List<Double>> rounds = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int forks = DEFAULT_FORKS;
+        Path baselineFile = null;
+        boolean worker = false;
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--forks" -> forks = Integer.parseInt(args[++i]);
+                case "--baseline" -> baselineFile = Path.of(args[++i]);
+                case WORKER -> worker = true;
+                default -> sizes.add(Integer.parseInt(args[i]));
+            }
+        }
+        if (sizes.isEmpty()) {
+            sizes = List.of(10_000, 100_000, 1_000_000);
+        }
+
+        if (worker) {
+            for (int size : sizes) {
+                run(size);
+            }
+            for (Map.Entry<String, List<Double>> entry : rounds.entrySet()) {
+                StringBuilder line = new StringBuilder(entry.getKey());
+                entry.getValue().forEach(nanosPerOp -> line.append('\t').append(nanosPerOp));
+                System.out.println(line);
+            }
+            System.err.println("(sink " + sink + ")");
+            return;
+        }
+
+        Map<String, double[]> baseline = baselineFile == null ? Map.of() : readResults(baselineFile);
+        System.out.println("#benchmark\tsize\tmean_ns_per_op\terror_99\tforks\trounds"
+                + (baselineFile == null ? "" : "\tbaseline_mean\tchange\tverdict"));
+        boolean slower = false;
+        for (int size : sizes) {
+            rounds.clear();
+            if (forks == 0) {
+                run(size);
+            } else {
+                for (int fork = 0; fork < forks; fork++) {
+                    fork(size);
+                }
+            }
+            for (Map.Entry<String, List<Double>> entry : rounds.entrySet()) {
+                slower |= report(entry.getKey(), entry.getValue(), Math.max(forks, 1), baseline);
+            }
+        }
+        if (forks == 0) {
+            System.err.println("(sink " + sink + ")");
+        }
+        if (slower) {
+            System.exit(2);
+        }
+    }
+
+    // Runs one size in a fresh JVM with the same options and class path, collecting its round times
+    private static void fork(int size) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), LibraryBenchmark.class.getName(),
+                WORKER, String.valueOf(size)));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                String[] fields = line.split("\t");
+                List<Double> times = rounds.computeIfAbsent(fields[0] + "\t" + fields[1], key -> new ArrayList<>());
+                for (int i = 2; i < fields.length; i++) {
+                    times.add(Double.parseDouble(fields[i]));
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("benchmark fork for size " + size + " exited with " + process.exitValue());
+        }
+    }
+
+    // Prints one result line; true if the baseline was faster beyond both error margins
+    private static boolean report(String key, List<Double> times, int forks, Map<String, double[]> baseline) {
+        int n = times.size();
+        double mean = times.stream().mapToDouble(Double::doubleValue).sum() / n;
+        double squares = times.stream().mapToDouble(time -> (time - mean) * (time - mean)).sum();
+        double error = n < 2 ? Double.NaN : tQuantile(n - 1) * Math.sqrt(squares / (n - 1) / n);
+        String line = String.format(Locale.ROOT, "%s\t%.1f\t%.1f\t%d\t%d", key, mean, error, forks, n);
+
+        double[] before = baseline.get(key);
+        if (before == null) {
+            System.out.println(baseline.isEmpty() ? line : line + "\t-\t-\tnew");
+            return false;
+        }
+        String verdict = mean - error > before[0] + before[1] ? "slower"
+                : mean + error < before[0] - before[1] ? "faster" : "same";
+        System.out.println(line + String.format(Locale.ROOT, "\t%.1f\t%+.1f%%\t%s",
+                before[0], (mean - before[0]) * 100 / before[0], verdict));
+        return verdict.equals("slower");
+    }
+
+    private static double tQuantile(int degreesOfFreedom) {
+        if (degreesOfFreedom <= T_99.length) {
+            return T_99[degreesOfFreedom - 1];
+        }
+        double z = 2.5758; // Cornish-Fisher correction of the normal quantile
+        return z + (z * z * z + z) / (4.0 * degreesOfFreedom);
+    }
+
+    // Mean and error by "benchmark<tab>size" from a previous run's output
+    private static Map<String, double[]> readResults(Path file) throws IOException {
+        Map<String, double[]> results = new HashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            results.put(fields[0] + "\t" + fields[1],
+                    new double[]{Double.parseDouble(fields[2]), Double.parseDouble(fields[3])});
+        }
+        return results;
+    }
+
+    private static void run(int size) {
+        Random random = new Random(SEED);
+        Library library = new Library("Benchmark");
+        library.setEventSink(LibraryEventSink.DISCARD);
+
+        int memberCount = Math.max(size / 10, 1);
+        List<String[]> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(syntheticBook(random, i));
+        }
+        library.addBooks(rows);
+        for (int i = 0; i < memberCount; i++) {
+            library.addMember(memberId(i), syntheticName(random), "member" + i + "@example.org", "555-" + i);
+        }
+        for (int i = 0; i < size / 5; i++) {
+            library.issueBook(isbn(i * 5), memberId(i % memberCount));
+        }
+        rows = null;
+
+        String[] bookQueries = new String[256];
+        String[] memberQueries = new String[256];
+        for (int i = 0; i < bookQueries.length; i++) {
+            bookQueries[i] = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)].substring(0, 3);
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            memberQueries[i] = random.nextBoolean() ? lastName.substring(0, Math.min(4, lastName.length()))
+                    : "member" + random.nextInt(memberCount);
+        }
+
+        int[] next = {size};
+        measure("addBook", size, () -> {
+            int i = next[0]++;
+            return library.addBook(isbn(i), "New " + i, "Author " + (i % 1000), GENRES[i % GENRES.length]).isSuccess() ? 1 : 0;
+        });
+
+        // Books whose ordinal isn't a multiple of five start on the shelf
+        int[] loan = {0};
+        measure("issueBook+returnBook", size, () -> {
+            int i = loan[0]++;
+            int shelved = i % (size - size / 5);
+            String isbn = isbn(shelved / 4 * 5 + 1 + shelved % 4);
+            String memberId = memberId(i % memberCount);
+            int issued = library.issueBook(isbn, memberId).isSuccess() ? 1 : 0;
+            return issued + (library.returnBook(isbn, memberId).isSuccess() ? 1 : 0);
+        });
+
+        int[] query = {0};
+        measure("searchBooks", size, () -> {
+            String text = bookQueries[query[0]++ & 255];
+            return silently(() -> library.searchBooks(text));
+        });
+        measure("searchMembers", size, () -> {
+            String text = memberQueries[query[0]++ & 255];
+            return silently(() -> library.searchMembers(text));
+        });
+        measure("generateLibraryReport", size, () -> silently(library::generateLibraryReport));
+        measure("getStatistics", size, () -> (int) library.getStatistics().getIssuedCopies());
+
+        library.close();
+    }
+
+    // Runs the operation in timed rounds and records the time per call of each measured one
+    private static void measure(String name, int size, IntSupplier operation) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            timeRound(operation);
+        }
+        List<Double> times = rounds.computeIfAbsent(name + "\t" + size, key -> new ArrayList<>());
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            times.add(timeRound(operation));
+        }
+    }
+
+    private static double timeRound(IntSupplier operation) {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 64; i++) {
+                sink += operation.getAsInt();
+            }
+            operations += 64;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ROUND_NANOS);
+        return (double) elapsed / operations;
+    }
+
+    // Runs a method that prints, with System.out pointed at nothing
+    private static int silently(Runnable printing) {
+        PrintStream console = System.out;
+        System.setOut(DISCARD);
+        try {
+            printing.run();
+        } finally {
+            System.setOut(console);
+        }
+        return 1;
+    }
+
+    private static String[] syntheticBook(Random random, int i) {
+        String title = capitalize(WORDS[random.nextInt(WORDS.length)]) + " of the "
+                + capitalize(WORDS[random.nextInt(WORDS.length)]) + " " + (i % 97);
+        String author = syntheticName(random);
+        return new String[]{isbn(i), title, author, GENRES[random.nextInt(GENRES.length)]};
+    }
+
+    private static String syntheticName(Random random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    private static String isbn(int i) {
+        return String.format("978%010d", i);
+    }
+
+    private static String memberId(int i) {
+        return "M" + i;
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
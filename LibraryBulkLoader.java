@@ -0,0 +1,203 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streams a delimited catalogue file (isbn, title, author, genre per line) into a Library.
+ * One thread reads the file in batches while a pool of workers parses and inserts them,
+ * so memory stays bounded by the number of batches in flight. Nothing is printed per row;
+ * rejected and duplicate rows are collected into the returned report instead.
+ */
+public class LibraryBulkLoader {
+    private static final int DEFAULT_BATCH_SIZE = 10_000;
+    private static final int MAX_REPORTED_ROWS = 100;
+
+    private final Library library;
+    private final char delimiter;
+    private final int batchSize;
+    private final int workers;
+
+    public LibraryBulkLoader(Library library, char delimiter) {
+        this(library, delimiter, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public LibraryBulkLoader(Library library, char delimiter, int batchSize, int workers) {
+        if (batchSize <= 0 || workers <= 0) {
+            throw new IllegalArgumentException("batchSize and workers must be positive");
+        }
+        this.library = library;
+        this.delimiter = delimiter;
+        this.batchSize = batchSize;
+        this.workers = workers;
+    }
+
+    // A first line whose first field is "isbn" is treated as a header and skipped
+    public ImportReport load(Path file) throws IOException {
+        ImportReport report = new ImportReport();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Deque<Future<?>> inFlight = new ArrayDeque<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            long firstLine = 1;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.regionMatches(true, 0, "isbn", 0, 4)) {
+                    firstLine = 2;
+                    continue;
+                }
+                batch.add(line);
+                if (batch.size() == batchSize) {
+                    submit(pool, inFlight, batch, firstLine, report);
+                    batch = new ArrayList<>(batchSize);
+                    firstLine = lineNumber + 1;
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(pool, inFlight, batch, firstLine, report);
+            }
+            while (!inFlight.isEmpty()) {
+                await(inFlight.poll());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return report;
+    }
+
+    // Blocks on the oldest batch when too many are queued, so a huge file can't fill the heap
+    private void submit(ExecutorService pool, Deque<Future<?>> inFlight, List<String> lines,
+                        long firstLine, ImportReport report) throws IOException {
+        if (inFlight.size() >= workers * 2) {
+            await(inFlight.poll());
+        }
+        inFlight.add(pool.submit(() -> insertBatch(lines, firstLine, report)));
+    }
+
+    private void insertBatch(List<String> lines, long firstLine, ImportReport report) {
+        List<String[]> rows = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = split(line);
+            if (fields.length != 4) {
+                report.reject(firstLine + i, "expected 4 fields but found " + fields.length);
+            } else if (fields[0].isEmpty() || fields[1].isEmpty()) {
+                report.reject(firstLine + i, "missing ISBN or title");
+            } else {
+                rows.add(fields);
+            }
+        }
+
+        List<String> duplicates = library.addBooks(rows);
+        report.loaded(rows.size() - duplicates.size());
+        duplicates.forEach(report::duplicate);
+    }
+
+    // Splits one line on the delimiter, honouring double-quoted fields with "" as an escaped quote
+    private String[] split(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import batch failed", e.getCause());
+        }
+    }
+
+    /**
+     * Totals for one import. Only the first few rejected and duplicate rows are kept
+     * as samples; the counts cover every row.
+     */
+    public static class ImportReport {
+        private long loaded;
+        private long duplicateCount;
+        private long rejectedCount;
+        private final List<String> duplicates = new ArrayList<>();
+        private final List<String> rejected = new ArrayList<>();
+
+        synchronized void loaded(long count) {
+            loaded += count;
+        }
+
+        synchronized void duplicate(String isbn) {
+            duplicateCount++;
+            if (duplicates.size() < MAX_REPORTED_ROWS) {
+                duplicates.add(isbn);
+            }
+        }
+
+        synchronized void reject(long lineNumber, String reason) {
+            rejectedCount++;
+            if (rejected.size() < MAX_REPORTED_ROWS) {
+                rejected.add("line " + lineNumber + ": " + reason);
+            }
+        }
+
+        public synchronized long getLoadedCount() {
+            return loaded;
+        }
+
+        public synchronized long getDuplicateCount() {
+            return duplicateCount;
+        }
+
+        public synchronized long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        public synchronized List<String> getDuplicateSamples() {
+            return new ArrayList<>(duplicates);
+        }
+
+        public synchronized List<String> getRejectedSamples() {
+            return new ArrayList<>(rejected);
+        }
+
+        public synchronized void display() {
+            System.out.println("\n=== IMPORT REPORT ===");
+            System.out.println("Loaded: " + loaded);
+            System.out.println("Duplicates: " + duplicateCount);
+            duplicates.forEach(isbn -> System.out.println("  ISBN " + isbn + " already exists"));
+            System.out.println("Rejected: " + rejectedCount);
+            rejected.forEach(reason -> System.out.println("  " + reason));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * Receives the outcome of every Library mutation. The default prints to the console
+ * on the calling thread; batch jobs can use AsyncConsoleSink or discard output entirely.
+ */
+public interface LibraryEventSink {
+    LibraryEventSink CONSOLE = result -> System.out.println(result.getMessage());
+    LibraryEventSink DISCARD = result -> { };
+
+    void publish(LibraryResult result);
+}
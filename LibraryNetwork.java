@@ -0,0 +1,344 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+/**
+ * A set of branch libraries run as one system. Each branch is an ordinary Library with
+ * its own catalogue, members and locks; the network routes ISBN and member lookups to the
+ * branches that have them, moves copies between branches, and fans searches out to every
+ * branch in parallel before merging the results.
+ *
+ * Copies move under the ISBN's lock in both branches, always taken in branch-name order,
+ * so a caller holding those locks never sees a copy in both places or in neither. Unlocked
+ * reads such as getAvailableCopyCount or findBookBranches can catch a move half done.
+ */
+public class LibraryNetwork implements AutoCloseable {
+    private final String networkName;
+    // Branch name -> branch, kept sorted so locks are always taken in the same order
+    private final ConcurrentSkipListMap<String, Library> branches;
+    // Member ID -> the branch they are registered at, kept current by each branch's member listener
+    private final ConcurrentHashMap<String, Library> memberRoutes;
+    private final ExecutorService searchPool;
+
+    public LibraryNetwork(String networkName) {
+        this.networkName = networkName;
+        this.branches = new ConcurrentSkipListMap<>();
+        this.memberRoutes = new ConcurrentHashMap<>();
+        this.searchPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, networkName + "-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Branch Management
+    public Library addBranch(String branchName) {
+        return addBranch(new Library(branchName));
+    }
+
+    public Library addBranch(Library branch) {
+        if (branches.putIfAbsent(branch.getLibraryName(), branch) != null) {
+            throw new IllegalArgumentException("Branch " + branch.getLibraryName() + " already exists");
+        }
+        // Listen first, then pick up the members the branch already has, so none slips between
+        branch.setMemberListener((memberId, registered) -> {
+            if (registered) {
+                memberRoutes.putIfAbsent(memberId, branch);
+            } else {
+                memberRoutes.remove(memberId, branch);
+            }
+        });
+        branch.streamMembers().forEach(member -> memberRoutes.putIfAbsent(member.getMemberId(), branch));
+        return branch;
+    }
+
+    public Library getBranch(String branchName) {
+        return branches.get(branchName);
+    }
+
+    public Collection<Library> getBranches() {
+        return Collections.unmodifiableCollection(branches.values());
+    }
+
+    // Routing
+    // Branch where the member is registered, or null. A member removed while their branch
+    // was being added can leave a stale route behind, so the branch is asked to confirm.
+    public Library findMemberBranch(String memberId) {
+        Library branch = memberRoutes.get(memberId);
+        if (branch != null && branch.getMember(memberId) == null) {
+            memberRoutes.remove(memberId, branch);
+            return null;
+        }
+        return branch;
+    }
+
+    // Branches that catalogue the title, whether or not a copy is on the shelf
+    public List<Library> findBookBranches(String isbn) {
+        List<Library> holding = new ArrayList<>();
+        for (Library branch : branches.values()) {
+            if (branch.getBook(isbn) != null) {
+                holding.add(branch);
+            }
+        }
+        return holding;
+    }
+
+    // Transfers
+    // Moves count shelved copies of a title from one branch to another. The target branch
+    // picks up the title if it didn't have it, and the source drops it when its last copy leaves.
+    public LibraryResult transferCopies(String isbn, String fromBranch, String toBranch, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        Library source = branches.get(fromBranch);
+        Library target = branches.get(toBranch);
+        if (source == null || target == null || source == target) {
+            return LibraryResult.failure(LibraryResult.Status.NOT_FOUND,
+                    "Unknown or identical branches: " + fromBranch + " -> " + toBranch);
+        }
+
+        List<Lock> locks = lockTitle(isbn, source, target);
+        try {
+            return moveCopies(isbn, source, target, count);
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    // Puts a copy on hold at the member's own branch, bringing one over from the branch
+    // with the most copies on the shelf if none is free there. Joins the home branch's
+    // waiting list when no branch has a copy to spare.
+    public LibraryResult placeHold(String isbn, String memberId) {
+        Library home = findMemberBranch(memberId);
+        if (home == null) {
+            return LibraryResult.failure(LibraryResult.Status.NOT_FOUND, "Member with ID " + memberId + " not found!");
+        }
+
+        while (true) {
+            if (home.getAvailableCopyCount(isbn) > 0) {
+                LibraryResult held = home.holdFreeCopy(isbn, memberId);
+                if (held.getStatus() != LibraryResult.Status.NOT_AVAILABLE) {
+                    return held;
+                }
+                continue; // the copy was taken in the meantime; look again
+            }
+
+            Library source = null;
+            for (Library branch : branches.values()) {
+                if (branch != home && branch.getAvailableCopyCount(isbn)
+                        > (source == null ? 0 : source.getAvailableCopyCount(isbn))) {
+                    source = branch;
+                }
+            }
+            if (source == null) {
+                if (home.getBook(isbn) == null) {
+                    return LibraryResult.failure(LibraryResult.Status.NOT_AVAILABLE,
+                            "No branch has a copy of " + isbn + " to spare");
+                }
+                return home.reserveBook(isbn, memberId);
+            }
+
+            List<Lock> locks = lockTitle(isbn, source, home);
+            try {
+                if (source.getAvailableCopyCount(isbn) == 0) {
+                    continue; // lost a race for the last copy; pick another branch
+                }
+                // Refuse before anything moves, so a hold that can't be placed leaves both shelves as they were
+                LibraryResult refused = home.holdRefusal(isbn, memberId);
+                if (refused != null) {
+                    return refused;
+                }
+                LibraryResult moved = moveCopies(isbn, source, home, 1);
+                if (!moved.isSuccess()) {
+                    return moved;
+                }
+                // Members already waiting at home get the copy first; this member then queues behind them
+                LibraryResult held = home.holdFreeCopy(isbn, memberId);
+                return held.getStatus() == LibraryResult.Status.NOT_AVAILABLE ? home.reserveBook(isbn, memberId) : held;
+            } finally {
+                unlock(locks);
+            }
+        }
+    }
+
+    // Caller holds the title's lock in both branches. Each branch logs to its own store, so
+    // the move can't be one record; instead everything that could refuse it is checked up
+    // front, and the copies reach the target before they leave the source. A crash in
+    // between leaves them counted at both branches rather than lost, and a source that
+    // fails to let go has the target's new copies taken back before the error goes up.
+    private LibraryResult moveCopies(String isbn, Library source, Library target, int count) {
+        Book book = source.getBook(isbn);
+        if (book == null) {
+            return LibraryResult.failure(LibraryResult.Status.NOT_FOUND,
+                    "Book with ISBN " + isbn + " not found at " + source.getLibraryName());
+        }
+        if (source.getAvailableCopyCount(isbn) < count) {
+            return LibraryResult.failure(LibraryResult.Status.NOT_AVAILABLE, "Only "
+                    + source.getAvailableCopyCount(isbn) + " copies on the shelf at " + source.getLibraryName());
+        }
+        Book existing = target.getBook(isbn);
+        if (existing != null && !(existing.getTitle().equals(book.getTitle())
+                && existing.getAuthor().equals(book.getAuthor()))) {
+            return LibraryResult.failure(LibraryResult.Status.ALREADY_EXISTS, target.getLibraryName()
+                    + " catalogues " + isbn + " as " + existing.getTitle() + " by " + existing.getAuthor());
+        }
+
+        LibraryResult added = existing != null ? target.addCopies(isbn, count)
+                : target.addBook(isbn, book.getTitle(), book.getAuthor(), book.getGenre(), count);
+        if (!added.isSuccess()) {
+            return added;
+        }
+        // With every copy that leaves on the shelf, neither removal can refuse; only the log can fail
+        boolean wholeTitle = source.getCopyCount(isbn) == count;
+        try {
+            LibraryResult removed = wholeTitle ? source.removeBook(isbn) : source.removeCopies(isbn, count);
+            if (!removed.isSuccess()) {
+                takeBack(isbn, target, existing == null, count);
+                return removed;
+            }
+        } catch (RuntimeException e) {
+            takeBack(isbn, target, existing == null, count);
+            throw e;
+        }
+        return LibraryResult.success("✓ Moved " + count + " copies of " + book.getTitle()
+                + " from " + source.getLibraryName() + " to " + target.getLibraryName());
+    }
+
+    // Undoes the target's side of a move. Copies the target already put on hold for its own
+    // waiting members stay there, since taking them back would cancel those holds.
+    private static void takeBack(String isbn, Library target, boolean newTitle, int count) {
+        int shelved = Math.min(count, target.getAvailableCopyCount(isbn));
+        if (newTitle && shelved == target.getCopyCount(isbn)) {
+            target.removeBook(isbn);
+        } else if (shelved > 0 && shelved < target.getCopyCount(isbn)) {
+            target.removeCopies(isbn, shelved);
+        }
+    }
+
+    private static List<Lock> lockTitle(String isbn, Library first, Library second) {
+        // Branch-name order, so two transfers in opposite directions can't deadlock
+        if (first.getLibraryName().compareTo(second.getLibraryName()) > 0) {
+            Library swap = first;
+            first = second;
+            second = swap;
+        }
+        List<Lock> locks = Arrays.asList(first.bookLock(isbn), second.bookLock(isbn));
+        locks.get(0).lock();
+        locks.get(1).lock();
+        return locks;
+    }
+
+    private static void unlock(List<Lock> locks) {
+        locks.get(1).unlock();
+        locks.get(0).unlock();
+    }
+
+    // Search
+    // Titles matching the query at any branch, best ranked first. A title found at several
+    // branches appears once, at its best rank, with every branch that has it.
+    public List<BookHit> findBooks(String query, int limit) {
+        Map<String, BookHit> hits = new LinkedHashMap<>();
+        List<Map.Entry<Library, List<Book>>> results = fanOut(branch -> branch.findBooks(query));
+
+        // Walk rank by rank across branches so the merged order follows each branch's ranking
+        for (int rank = 0; rank < limit; rank++) {
+            boolean any = false;
+            for (Map.Entry<Library, List<Book>> result : results) {
+                if (rank < result.getValue().size()) {
+                    any = true;
+                    Book book = result.getValue().get(rank);
+                    hits.computeIfAbsent(book.getIsbn(), isbn -> new BookHit(book))
+                            .branches.add(result.getKey().getLibraryName());
+                }
+            }
+            if (!any) {
+                break;
+            }
+        }
+
+        List<BookHit> merged = new ArrayList<>(hits.values());
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    public List<Member> findMembers(String query, int limit) {
+        List<Member> merged = new ArrayList<>();
+        List<Map.Entry<Library, List<Member>>> results = fanOut(branch -> branch.findMembers(query, limit));
+        for (int rank = 0; rank < limit && merged.size() < limit; rank++) {
+            for (Map.Entry<Library, List<Member>> result : results) {
+                if (rank < result.getValue().size() && merged.size() < limit) {
+                    merged.add(result.getValue().get(rank));
+                }
+            }
+        }
+        return merged;
+    }
+
+    public void searchBooks(String query) {
+        List<BookHit> hits = findBooks(query, 50);
+        if (hits.isEmpty()) {
+            System.out.println("No books found matching: " + query);
+            return;
+        }
+
+        System.out.println("\n=== " + networkName + " SEARCH RESULTS FOR: " + query + " ===");
+        hits.forEach(System.out::println);
+    }
+
+    // Runs the search on every branch at once and returns each branch's results in branch order
+    private <T> List<Map.Entry<Library, List<T>>> fanOut(Function<Library, List<T>> search) {
+        List<Map.Entry<Library, Future<List<T>>>> pending = new ArrayList<>();
+        for (Library branch : branches.values()) {
+            pending.add(Map.entry(branch, searchPool.submit(() -> search.apply(branch))));
+        }
+
+        List<Map.Entry<Library, List<T>>> results = new ArrayList<>(pending.size());
+        for (Map.Entry<Library, Future<List<T>>> entry : pending) {
+            try {
+                results.add(Map.entry(entry.getKey(), entry.getValue().get()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Search interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search failed at " + entry.getKey().getLibraryName(), e.getCause());
+            }
+        }
+        return results;
+    }
+
+    public String getNetworkName() {
+        return networkName;
+    }
+
+    // Stops the search threads and closes every branch
+    @Override
+    public void close() {
+        searchPool.shutdownNow();
+        branches.values().forEach(Library::close);
+    }
+
+    /**
+     * One title in merged search results and the branches that catalogue it.
+     */
+    public static class BookHit {
+        private final Book book;
+        private final List<String> branches = new ArrayList<>();
+
+        BookHit(Book book) {
+            this.book = book;
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        public List<String> getBranches() {
+            return Collections.unmodifiableList(branches);
+        }
+
+        @Override
+        public String toString() {
+            return book + " | Branches: " + String.join(", ", branches);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Outcome of a Library operation. Callers branch on the status; the message is
+ * the text that is handed to the library's event sink.
+ */
+public class LibraryResult {
+    public enum Status {
+        SUCCESS,
+        NOT_FOUND,
+        ALREADY_EXISTS,
+        NOT_AVAILABLE,
+        AVAILABLE,
+        NOT_ISSUED,
+        LIMIT_REACHED,
+        HAS_LOANS,
+        AMBIGUOUS
+    }
+
+    private final Status status;
+    private final String message;
+
+    private LibraryResult(Status status, String message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    public static LibraryResult success(String message) {
+        return new LibraryResult(Status.SUCCESS, message);
+    }
+
+    public static LibraryResult failure(Status status, String message) {
+        return new LibraryResult(status, message);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -0,0 +1,91 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of a library's running counters, as returned by
+ * Library.getStatistics(). The counters are read one after another without
+ * stopping writers, so totals taken during heavy circulation may be a
+ * mutation or two apart from each other.
+ */
+public class LibraryStatistics {
+    private final String libraryName;
+    private final LocalDate date;
+    private final long titles;
+    private final long copies;
+    private final long issuedCopies;
+    private final long heldCopies;
+    private final long overdueCopies;
+    private final long members;
+    private final long activeMembers;
+    private final Map<String, Long> genreCounts;
+
+    LibraryStatistics(String libraryName, LocalDate date, long titles, long copies, long issuedCopies,
+                      long heldCopies, long overdueCopies, long members, long activeMembers,
+                      Map<String, Long> genreCounts) {
+        this.libraryName = libraryName;
+        this.date = date;
+        this.titles = titles;
+        this.copies = copies;
+        this.issuedCopies = issuedCopies;
+        this.heldCopies = heldCopies;
+        this.overdueCopies = overdueCopies;
+        this.members = members;
+        this.activeMembers = activeMembers;
+        this.genreCounts = Collections.unmodifiableMap(new LinkedHashMap<>(genreCounts));
+    }
+
+    public String getLibraryName() {
+        return libraryName;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public long getTitles() {
+        return titles;
+    }
+
+    public long getCopies() {
+        return copies;
+    }
+
+    public long getAvailableCopies() {
+        return copies - issuedCopies - heldCopies;
+    }
+
+    public long getIssuedCopies() {
+        return issuedCopies;
+    }
+
+    public long getHeldCopies() {
+        return heldCopies;
+    }
+
+    public long getOverdueCopies() {
+        return overdueCopies;
+    }
+
+    public long getMembers() {
+        return members;
+    }
+
+    public long getActiveMembers() {
+        return activeMembers;
+    }
+
+    // Titles per genre, largest first
+    public Map<String, Long> getGenreCounts() {
+        return genreCounts;
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryStatistics{library=" + libraryName + ", date=" + date + ", titles=" + titles
+                + ", copies=" + copies + ", available=" + getAvailableCopies() + ", issued=" + issuedCopies
+                + ", held=" + heldCopies + ", overdue=" + overdueCopies + ", members=" + members
+                + ", activeMembers=" + activeMembers + ", genres=" + genreCounts + "}";
+    }
+}
@@ -0,0 +1,491 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persists Library state as a compact binary snapshot plus a write-ahead log
+ * of every mutation made since that snapshot was taken. On startup the snapshot
+ * is memory-mapped and decoded, then the log tail is replayed on top of it.
+ * Reservation queues and holds are logged and snapshotted like loans. The loan history
+ * behind recommendations goes into the snapshot too, and issue and return records carry
+ * their dates, so the history comes back complete after a restart.
+ *
+ * Each log starts with a generation number, and a snapshot records the generation of
+ * the log that follows it. A new snapshot takes the next generation and the log is only
+ * restarted after the snapshot is safely in place, so a log left over from a crash in
+ * between carries an older generation and is discarded instead of replayed twice.
+ */
+public class LibraryStore implements Closeable {
+    private static final int SNAPSHOT_MAGIC = 0x4C494231; // "LIB1"
+    private static final int SNAPSHOT_VERSION = 5;
+    private static final int WAL_MAGIC = 0x4C494257; // "LIBW"
+    private static final int WAL_VERSION = 2;
+    private static final int WAL_HEADER_LENGTH = 16;
+    private static final String SNAPSHOT_FILE = "library.snapshot";
+    private static final String WAL_FILE = "library.wal";
+
+    // Write-ahead log operations
+    private static final byte ADD_BOOK = 1;
+    private static final byte REMOVE_BOOK = 2;
+    private static final byte ADD_MEMBER = 3;
+    private static final byte REMOVE_MEMBER = 4;
+    private static final byte ISSUE = 5;
+    private static final byte RETURN = 6;
+    private static final byte ADD_COPIES = 7;
+    private static final byte REMOVE_COPIES = 8;
+    private static final byte RESERVE = 9;
+    private static final byte CANCEL_RESERVATION = 10;
+    private static final byte HOLD = 11;
+    private static final byte RELEASE_HOLD = 12;
+
+    private final Path snapshotFile;
+    private final Path walFile;
+    private final ByteArrayOutputStream recordBuffer;
+    private final DataOutputStream record;
+    private final CRC32 crc;
+    private DataOutputStream wal;
+    private long walRecords;
+    // Generation of the current log and of the snapshot it follows
+    private long generation;
+
+    public LibraryStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        this.walFile = directory.resolve(WAL_FILE);
+        this.recordBuffer = new ByteArrayOutputStream();
+        this.record = new DataOutputStream(recordBuffer);
+        this.crc = new CRC32();
+    }
+
+    // Rebuilds the library from the snapshot and the log, then opens the log for appending
+    void load(Library library) throws IOException {
+        generation = Files.exists(snapshotFile) ? loadSnapshot(library) : 0;
+        long logGeneration = Files.exists(walFile) ? readLogGeneration() : -1;
+        if (logGeneration > generation) {
+            throw new IOException("Write-ahead log " + walFile + " is newer than snapshot " + snapshotFile);
+        }
+        if (logGeneration == generation) {
+            long validLength = replayLog(library);
+            try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.WRITE)) {
+                // Drop a record that was only partly written when the process stopped
+                channel.truncate(validLength);
+            }
+        } else {
+            // No log yet, or one the snapshot already contains
+            startLog(generation);
+        }
+        openLog();
+    }
+
+    // Log appends
+    synchronized void logAddBook(String isbn, String title, String author, String genre) {
+        beginRecord(ADD_BOOK);
+        writeStrings(isbn, title, author, genre);
+        endRecord();
+    }
+
+    synchronized void logRemoveBook(String isbn) {
+        beginRecord(REMOVE_BOOK);
+        writeStrings(isbn);
+        endRecord();
+    }
+
+    synchronized void logAddMember(String memberId, String name, String email, String phoneNumber) {
+        beginRecord(ADD_MEMBER);
+        writeStrings(memberId, name, email, phoneNumber);
+        endRecord();
+    }
+
+    synchronized void logRemoveMember(String memberId) {
+        beginRecord(REMOVE_MEMBER);
+        writeStrings(memberId);
+        endRecord();
+    }
+
+    synchronized void logIssue(String isbn, String memberId, LocalDate dueDate, LocalDate issueDate) {
+        beginRecord(ISSUE);
+        writeStrings(isbn, memberId);
+        writeDays(dueDate, issueDate);
+        endRecord();
+    }
+
+    synchronized void logReturn(String isbn, String memberId, LocalDate returnDate) {
+        beginRecord(RETURN);
+        writeStrings(isbn, memberId);
+        writeDays(returnDate);
+        endRecord();
+    }
+
+    synchronized void logAddCopies(String isbn, int count) {
+        beginRecord(ADD_COPIES);
+        writeStrings(isbn);
+        writeCount(count);
+        endRecord();
+    }
+
+    synchronized void logRemoveCopies(String isbn, int count) {
+        beginRecord(REMOVE_COPIES);
+        writeStrings(isbn);
+        writeCount(count);
+        endRecord();
+    }
+
+    synchronized void logReserve(String isbn, String memberId) {
+        beginRecord(RESERVE);
+        writeStrings(isbn, memberId);
+        endRecord();
+    }
+
+    synchronized void logCancelReservation(String isbn, String memberId) {
+        beginRecord(CANCEL_RESERVATION);
+        writeStrings(isbn, memberId);
+        endRecord();
+    }
+
+    synchronized void logHold(String isbn, String memberId, LocalDate expires) {
+        beginRecord(HOLD);
+        writeStrings(isbn, memberId);
+        writeDays(expires);
+        endRecord();
+    }
+
+    synchronized void logReleaseHold(String isbn, String memberId) {
+        beginRecord(RELEASE_HOLD);
+        writeStrings(isbn, memberId);
+        endRecord();
+    }
+
+    synchronized long getLogRecordCount() {
+        return walRecords;
+    }
+
+    // Writes a new snapshot next to the old one, syncs it to disk, swaps it in and only then
+    // starts an empty log of the snapshot's generation
+    synchronized void writeSnapshot(Collection<Member> members, Map<String, Book> books,
+                                    Map<String, BookCopies> copies, Map<String, ? extends Collection<String>> reservations,
+                                    LoanHistory history) throws IOException {
+        long nextGeneration = generation + 1;
+        Path tempFile = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(nextGeneration);
+
+            out.writeInt(members.size());
+            for (Member member : members) {
+                writeString(out, member.getMemberId());
+                writeString(out, member.getName());
+                writeString(out, member.getEmail());
+                writeString(out, member.getPhoneNumber());
+            }
+
+            out.writeInt(books.size());
+            for (Book book : books.values()) {
+                writeString(out, book.getIsbn());
+                writeString(out, book.getTitle());
+                writeString(out, book.getAuthor());
+                writeString(out, book.getGenre());
+                out.writeInt(copies.get(book.getIsbn()).getCopyCount());
+            }
+
+            // Issued copies with their due dates, then held copies with their expiry dates
+            writeCopies(out, copies, BookCopies.ISSUED);
+            writeCopies(out, copies, BookCopies.HELD);
+
+            out.writeInt(reservations.size());
+            for (Map.Entry<String, ? extends Collection<String>> entry : reservations.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String memberId : entry.getValue()) {
+                    writeString(out, memberId);
+                }
+            }
+
+            // Every past loan, oldest first, so replaying them rebuilds the co-borrow counts
+            int records = history.size();
+            out.writeInt(records);
+            for (int i = 0; i < records; i++) {
+                writeString(out, history.isbnAt(i));
+                writeString(out, history.memberAt(i));
+                out.writeLong(history.issueDayAt(i));
+                out.writeLong(history.returnDayAt(i));
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(snapshotFile.getParent());
+
+        // A crash from here on leaves a log of the previous generation, which load skips
+        wal.close();
+        startLog(nextGeneration);
+        generation = nextGeneration;
+        walRecords = 0;
+        openLog();
+    }
+
+    // Every copy in the given state as ISBN, member and day
+    private static void writeCopies(DataOutputStream out, Map<String, BookCopies> copies, byte state)
+            throws IOException {
+        int count = 0;
+        for (BookCopies bookCopies : copies.values()) {
+            count += state == BookCopies.ISSUED ? bookCopies.getIssuedCount() : bookCopies.getHeldCount();
+        }
+        out.writeInt(count);
+        for (Map.Entry<String, BookCopies> entry : copies.entrySet()) {
+            BookCopies bookCopies = entry.getValue();
+            for (int copy = 0; copy < bookCopies.getCopyCount(); copy++) {
+                if (bookCopies.getState(copy) == state) {
+                    writeString(out, entry.getKey());
+                    writeString(out, bookCopies.getMember(copy));
+                    out.writeLong(bookCopies.getDay(copy));
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
+    // Returns the generation of the log that follows the snapshot
+    private long loadSnapshot(Library library) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unrecognized snapshot file: " + snapshotFile);
+            }
+            long snapshotGeneration = in.getLong();
+
+            for (int i = in.getInt(); i > 0; i--) {
+                library.applyAddMember(readString(in), readString(in), readString(in), readString(in));
+            }
+            for (int i = in.getInt(); i > 0; i--) {
+                String isbn = readString(in);
+                library.applyAddBook(isbn, readString(in), readString(in), readString(in));
+                int copyCount = in.getInt();
+                if (copyCount > 1) {
+                    library.applyAddCopies(isbn, copyCount - 1);
+                }
+            }
+            for (int i = in.getInt(); i > 0; i--) {
+                library.applyIssue(readString(in), readString(in), LocalDate.ofEpochDay(in.getLong()));
+            }
+            for (int i = in.getInt(); i > 0; i--) {
+                library.applyHold(readString(in), readString(in), LocalDate.ofEpochDay(in.getLong()));
+            }
+            for (int i = in.getInt(); i > 0; i--) {
+                String isbn = readString(in);
+                for (int waiting = in.getInt(); waiting > 0; waiting--) {
+                    library.applyReserve(isbn, readString(in));
+                }
+            }
+            LoanHistory history = library.getLoanHistory();
+            for (int i = in.getInt(); i > 0; i--) {
+                history.restore(readString(in), readString(in), in.getLong(), in.getLong());
+            }
+            return snapshotGeneration;
+        }
+    }
+
+    // Generation in the log's header, or -1 when a crash cut the header short
+    private long readLogGeneration() throws IOException {
+        try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.READ)) {
+            if (channel.size() < WAL_HEADER_LENGTH) {
+                return -1;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, WAL_HEADER_LENGTH);
+            if (header.getInt() != WAL_MAGIC || header.getInt() != WAL_VERSION) {
+                throw new IOException("Unrecognized write-ahead log: " + walFile);
+            }
+            return header.getLong();
+        }
+    }
+
+    // Returns the length of the log up to the last complete, uncorrupted record
+    private long replayLog(Library library) throws IOException {
+        try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            in.position(WAL_HEADER_LENGTH);
+            CRC32 check = new CRC32();
+            while (in.remaining() >= 8) {
+                int start = in.position();
+                int length = in.getInt();
+                int expectedCrc = in.getInt();
+                if (length <= 0 || length > in.remaining()) {
+                    return start;
+                }
+
+                ByteBuffer payload = in.slice(in.position(), length);
+                check.reset();
+                check.update(payload.duplicate());
+                if ((int) check.getValue() != expectedCrc) {
+                    return start;
+                }
+                in.position(in.position() + length);
+                applyRecord(library, payload);
+                walRecords++;
+            }
+            return in.position();
+        } finally {
+            library.getLoanHistory().flush();
+        }
+    }
+
+    private void applyRecord(Library library, ByteBuffer in) throws IOException {
+        byte op = in.get();
+        switch (op) {
+            case ADD_BOOK:
+                library.applyAddBook(readString(in), readString(in), readString(in), readString(in));
+                break;
+            case REMOVE_BOOK:
+                library.applyRemoveBook(readString(in));
+                break;
+            case ADD_MEMBER:
+                library.applyAddMember(readString(in), readString(in), readString(in), readString(in));
+                break;
+            case REMOVE_MEMBER:
+                library.applyRemoveMember(readString(in));
+                break;
+            case ISSUE: {
+                String isbn = readString(in);
+                String memberId = readString(in);
+                library.applyIssue(isbn, memberId, LocalDate.ofEpochDay(in.getLong()));
+                library.getLoanHistory().recordIssue(isbn, memberId, in.getLong());
+                break;
+            }
+            case RETURN: {
+                String isbn = readString(in);
+                String memberId = readString(in);
+                library.applyReturn(isbn, memberId);
+                library.getLoanHistory().recordReturn(isbn, memberId, in.getLong());
+                break;
+            }
+            case ADD_COPIES:
+                library.applyAddCopies(readString(in), in.getInt());
+                break;
+            case REMOVE_COPIES:
+                library.applyRemoveCopies(readString(in), in.getInt());
+                break;
+            case RESERVE:
+                library.applyReserve(readString(in), readString(in));
+                break;
+            case CANCEL_RESERVATION:
+                library.applyCancelReservation(readString(in), readString(in));
+                break;
+            case HOLD:
+                library.applyHold(readString(in), readString(in), LocalDate.ofEpochDay(in.getLong()));
+                break;
+            case RELEASE_HOLD:
+                library.applyReleaseHold(readString(in), readString(in));
+                break;
+            default:
+                throw new IOException("Unknown write-ahead log operation: " + op);
+        }
+    }
+
+    // Replaces the log with an empty one of the given generation
+    private void startLog(long logGeneration) throws IOException {
+        try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(WAL_HEADER_LENGTH).putInt(WAL_MAGIC).putInt(WAL_VERSION)
+                    .putLong(logGeneration);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+    }
+
+    // Makes a rename in the directory durable; not every platform can open a directory
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // the rename is still atomic, just not yet guaranteed to be on disk
+        }
+    }
+
+    private void openLog() throws IOException {
+        wal = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(walFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    private void beginRecord(byte op) {
+        recordBuffer.reset();
+        try {
+            record.writeByte(op);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeStrings(String... values) {
+        try {
+            for (String value : values) {
+                writeString(record, value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeDays(LocalDate... days) {
+        try {
+            for (LocalDate day : days) {
+                record.writeLong(day.toEpochDay());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeCount(int count) {
+        try {
+            record.writeInt(count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Frames the buffered record as length | CRC32 | payload and pushes it to the OS
+    private void endRecord() {
+        byte[] payload = recordBuffer.toByteArray();
+        crc.reset();
+        crc.update(payload);
+        try {
+            wal.writeInt(payload.length);
+            wal.writeInt((int) crc.getValue());
+            wal.write(payload);
+            wal.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to write-ahead log " + walFile, e);
+        }
+        walRecords++;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,193 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency stress check for Library circulation.
+ *
+ *   java LibraryStress [threads] [rounds] [operationsPerThread]
+ *
+ * Defaults to 8 threads, 5 rounds and 100k operations per thread per round. Every thread
+ * issues, returns, reserves and cancels at random against the same small set of titles
+ * and members, so the stripe locks are contended all the time. A member is checked
+ * against the borrow limit after each issue it wins. After every round, with all threads
+ * stopped, the loans are checked against the per-title counts, the per-member borrow
+ * counts and the library's running counters. The first broken invariant, or any
+ * exception thrown by a worker, fails the run with an AssertionError and exit status 1.
+ */
+public class LibraryStress {
+    private static final int TITLES = 40;
+    private static final int COPIES_PER_TITLE = 3;
+    private static final int MEMBERS = 60;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws InterruptedException {
+        try {
+            run(args);
+        } catch (AssertionError e) {
+            System.err.println("INVARIANT BROKEN: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void run(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        try (Library library = new Library("Stress")) {
+            library.setEventSink(LibraryEventSink.DISCARD);
+            for (int i = 0; i < TITLES; i++) {
+                library.addBook(isbn(i), "Title " + i, "Author " + i % 7, "Genre " + i % 5, COPIES_PER_TITLE);
+            }
+            for (int i = 0; i < MEMBERS; i++) {
+                library.addMember(memberId(i), "Member " + i, "member" + i + "@example.org", "555-" + i);
+            }
+
+            Map<LibraryResult.Status, LongAdder> outcomes = new ConcurrentHashMap<>();
+            for (int round = 1; round <= rounds; round++) {
+                long started = System.nanoTime();
+                runRound(library, threads, operations, SEED + round, outcomes);
+                long millis = (System.nanoTime() - started) / 1_000_000;
+                verify(library);
+                System.out.printf("round %d: %d operations on %d threads in %d ms, invariants hold%n",
+                        round, (long) threads * operations, threads, millis);
+            }
+            System.out.println("outcomes: " + new TreeMap<>(outcomes));
+            // A run in which nothing was ever issued proves nothing about the invariants
+            if (!outcomes.containsKey(LibraryResult.Status.SUCCESS)) {
+                fail("no operation succeeded");
+            }
+        }
+    }
+
+    private static void runRound(Library library, int threads, int operations, long seed,
+                                 Map<LibraryResult.Status, LongAdder> outcomes) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed * 31 + t);
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < operations; i++) {
+                    LibraryResult result = randomOperation(library, random);
+                    outcomes.computeIfAbsent(result.getStatus(), status -> new LongAdder()).increment();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        pool.shutdown();
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            if (e.getCause() instanceof AssertionError) {
+                throw (AssertionError) e.getCause();
+            }
+            throw new AssertionError("worker threw " + e.getCause(), e.getCause());
+        }
+    }
+
+    private static LibraryResult randomOperation(Library library, Random random) {
+        String isbn = isbn(random.nextInt(TITLES));
+        String memberId = memberId(random.nextInt(MEMBERS));
+        int choice = random.nextInt(100);
+        if (choice < 50) {
+            LibraryResult result = library.issueBook(isbn, memberId);
+            Member member = library.getMember(memberId);
+            if (result.isSuccess() && member.getCurrentBorrowedCount() > member.getMaxBorrowLimit()) {
+                fail(memberId + " holds " + member.getCurrentBorrowedCount() + " books after an issue, limit "
+                        + member.getMaxBorrowLimit());
+            }
+            return result;
+        } else if (choice < 85) {
+            return library.returnBook(isbn, memberId);
+        } else if (choice < 90) {
+            return library.returnBook(isbn);
+        } else if (choice < 97) {
+            return library.reserveBook(isbn, memberId);
+        }
+        return library.cancelReservation(isbn, memberId);
+    }
+
+    // Runs with every worker stopped, so all of the counts below must agree exactly
+    private static void verify(Library library) {
+        Map<String, Integer> loansByTitle = new HashMap<>();
+        Map<String, Integer> loansByMember = new HashMap<>();
+        long loans = 0;
+        for (Set<Library.Loan> due : library.getLoansDueBefore(LocalDate.MAX).values()) {
+            for (Library.Loan loan : due) {
+                loansByTitle.merge(loan.getIsbn(), 1, Integer::sum);
+                loansByMember.merge(loan.getMemberId(), 1, Integer::sum);
+                loans++;
+            }
+        }
+
+        long available = 0;
+        long held = 0;
+        for (CatalogueSnapshot.Entry entry : (Iterable<CatalogueSnapshot.Entry>) library.streamBooks()::iterator) {
+            String isbn = entry.getBook().getIsbn();
+            int issued = loansByTitle.getOrDefault(isbn, 0);
+            // One member holding two copies collapses into a single loan, so this catches double issues
+            if (entry.getIssued() != issued) {
+                fail(isbn + " has " + entry.getIssued() + " copies issued but " + issued + " loans");
+            }
+            if (entry.getAvailable() != library.getAvailableCopyCount(isbn)) {
+                fail(isbn + " shows " + entry.getAvailable() + " available in the catalogue but "
+                        + library.getAvailableCopyCount(isbn) + " on the shelf");
+            }
+            if (entry.getAvailable() < 0 || entry.getOnHold() < 0 || entry.getCopies() != COPIES_PER_TITLE) {
+                fail(isbn + " has " + entry.getCopies() + " copies, " + entry.getAvailable() + " available, "
+                        + issued + " issued and " + entry.getOnHold() + " on hold");
+            }
+            available += entry.getAvailable();
+            held += entry.getOnHold();
+        }
+
+        long borrowed = 0;
+        long active = 0;
+        for (int i = 0; i < MEMBERS; i++) {
+            Member member = library.getMember(memberId(i));
+            int count = member.getCurrentBorrowedCount();
+            if (count > member.getMaxBorrowLimit()) {
+                fail(member.getMemberId() + " holds " + count + " books, limit " + member.getMaxBorrowLimit());
+            }
+            if (count != loansByMember.getOrDefault(member.getMemberId(), 0)) {
+                fail(member.getMemberId() + " counts " + count + " books but has "
+                        + loansByMember.getOrDefault(member.getMemberId(), 0) + " loans");
+            }
+            borrowed += count;
+            active += count > 0 ? 1 : 0;
+        }
+
+        LibraryStatistics statistics = library.getStatistics();
+        if (statistics.getIssuedCopies() != loans || borrowed != loans) {
+            fail("issued counter " + statistics.getIssuedCopies() + ", member borrow counts " + borrowed
+                    + ", loans " + loans);
+        }
+        if (statistics.getAvailableCopies() != available || statistics.getHeldCopies() != held) {
+            fail("counters show " + statistics.getAvailableCopies() + " available and " + statistics.getHeldCopies()
+                    + " held, titles show " + available + " and " + held);
+        }
+        if (statistics.getActiveMembers() != active) {
+            fail("active member counter " + statistics.getActiveMembers() + ", members with loans " + active);
+        }
+    }
+
+    private static void fail(String message) {
+        throw new AssertionError(message);
+    }
+
+    private static String isbn(int i) {
+        return String.format("978%010d", i);
+    }
+
+    private static String memberId(int i) {
+        return "M" + i;
+    }
+}
@@ -0,0 +1,316 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Every loan the library has made, kept as parallel primitive columns:
+ * member ordinal, book ordinal, issue day and return day (epoch days, -1 while out).
+ * Ordinals come from the history's own symbol tables and are never reused, so old
+ * records stay valid after books or members are removed.
+ *
+ * On top of the columns sits a sparse co-borrow matrix: each issue adds one to the pair
+ * count of the new book and each of the member's recently borrowed books. Pair counts only
+ * ever grow, so the top entries of each row can be kept exact as counts change and
+ * recommendations are a copy of a short array.
+ *
+ * Library records issues and returns while it holds the book's lock, so they only go on a
+ * lock-free queue there, in the order the copy changed hands. flush() applies the queue
+ * once the stripe locks are released, one thread at a time; readers apply whatever is
+ * still queued before they look.
+ */
+class LoanHistory {
+    private static final int RECENT_BOOKS = 64;
+    private static final int TOP_PER_BOOK = 10;
+
+    private final SymbolTable memberIds = new SymbolTable();
+    private final SymbolTable isbns = new SymbolTable();
+
+    private int[] memberColumn = new int[1024];
+    private int[] bookColumn = new int[1024];
+    private int[] issueDayColumn = new int[1024];
+    private int[] returnDayColumn = new int[1024];
+    private int size;
+
+    // (member << 32 | book) -> record of the loan still out
+    private final Map<Long, Integer> openLoans = new HashMap<>();
+    // Member ordinal -> distinct books most recently borrowed, oldest first
+    private int[][] recentBooks = new int[1024][];
+    private CoBorrowRow[] rows = new CoBorrowRow[1024];
+
+    // Loan events not yet applied, oldest first
+    private final Queue<LoanEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    void recordIssue(String isbn, String memberId, long day) {
+        pending.add(new LoanEvent(isbn, memberId, day, true));
+    }
+
+    void recordReturn(String isbn, String memberId, long day) {
+        pending.add(new LoanEvent(isbn, memberId, day, false));
+    }
+
+    // Applies queued events unless another thread already is; that thread picks up ours too
+    void flush() {
+        while (!pending.isEmpty() && flushing.compareAndSet(false, true)) {
+            try {
+                synchronized (this) {
+                    applyPending();
+                }
+            } finally {
+                flushing.set(false);
+            }
+        }
+    }
+
+    // Caller holds the monitor
+    private void applyPending() {
+        LoanEvent event;
+        while ((event = pending.poll()) != null) {
+            if (event.issue) {
+                applyIssue(event.isbn, event.memberId, event.day);
+            } else {
+                applyReturn(event.isbn, event.memberId, event.day);
+            }
+        }
+    }
+
+    private void applyIssue(String isbn, String memberId, long day) {
+        int member = memberIds.intern(memberId);
+        int book = isbns.intern(isbn);
+        if (size == memberColumn.length) {
+            int capacity = size * 2;
+            memberColumn = Arrays.copyOf(memberColumn, capacity);
+            bookColumn = Arrays.copyOf(bookColumn, capacity);
+            issueDayColumn = Arrays.copyOf(issueDayColumn, capacity);
+            returnDayColumn = Arrays.copyOf(returnDayColumn, capacity);
+        }
+        memberColumn[size] = member;
+        bookColumn[size] = book;
+        issueDayColumn[size] = (int) day;
+        returnDayColumn[size] = -1;
+        openLoans.put(key(member, book), size);
+        size++;
+
+        int[] recent = recentBooks(member);
+        int count = recent[RECENT_BOOKS];
+        boolean seen = false;
+        for (int i = 0; i < count; i++) {
+            if (recent[i] == book) {
+                seen = true;
+            } else {
+                row(book).increment(recent[i]);
+                row(recent[i]).increment(book);
+            }
+        }
+        remember(recent, book, seen);
+    }
+
+    private void applyReturn(String isbn, String memberId, long day) {
+        int member = memberIds.codeOf(memberId);
+        int book = isbns.codeOf(isbn);
+        if (member < 0 || book < 0) {
+            return; // issued before the history started
+        }
+        Integer record = openLoans.remove(key(member, book));
+        if (record != null) {
+            returnDayColumn[record] = (int) day;
+        }
+    }
+
+    // Puts back a record saved by LibraryStore; records must come back in their original order
+    synchronized void restore(String isbn, String memberId, long issueDay, long returnDay) {
+        applyPending();
+        applyIssue(isbn, memberId, issueDay);
+        if (returnDay >= 0) {
+            applyReturn(isbn, memberId, returnDay);
+        }
+    }
+
+    // ISBNs most often borrowed by the same members as this one, most frequent first
+    synchronized List<String> recommend(String isbn, int limit) {
+        applyPending();
+        List<String> results = new ArrayList<>();
+        int book = isbns.codeOf(isbn);
+        if (book < 0 || book >= rows.length || rows[book] == null) {
+            return results;
+        }
+        CoBorrowRow row = rows[book];
+        for (int i = 0; i < row.topSize && results.size() < limit; i++) {
+            results.add(isbns.symbol(row.top[i]));
+        }
+        return results;
+    }
+
+    synchronized int size() {
+        applyPending();
+        return size;
+    }
+
+    // Column access by record number
+    synchronized String memberAt(int record) {
+        applyPending();
+        return memberIds.symbol(memberColumn[record]);
+    }
+
+    synchronized String isbnAt(int record) {
+        applyPending();
+        return isbns.symbol(bookColumn[record]);
+    }
+
+    synchronized long issueDayAt(int record) {
+        applyPending();
+        return issueDayColumn[record];
+    }
+
+    // -1 while the book is still out
+    synchronized long returnDayAt(int record) {
+        applyPending();
+        return returnDayColumn[record];
+    }
+
+    // The member's recent-book ring; the last slot holds how many entries are in use
+    private int[] recentBooks(int member) {
+        if (member >= recentBooks.length) {
+            recentBooks = Arrays.copyOf(recentBooks, Math.max(member + 1, recentBooks.length * 2));
+        }
+        if (recentBooks[member] == null) {
+            recentBooks[member] = new int[RECENT_BOOKS + 1];
+        }
+        return recentBooks[member];
+    }
+
+    // Moves the book to the newest end, dropping the oldest once the list is full
+    private static void remember(int[] recent, int book, boolean seen) {
+        int count = recent[RECENT_BOOKS];
+        int from = 0;
+        if (seen) {
+            while (recent[from] != book) {
+                from++;
+            }
+        } else if (count < RECENT_BOOKS) {
+            recent[count] = book;
+            recent[RECENT_BOOKS] = count + 1;
+            return;
+        }
+        System.arraycopy(recent, from + 1, recent, from, count - from - 1);
+        recent[count - 1] = book;
+    }
+
+    private CoBorrowRow row(int book) {
+        if (book >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(book + 1, rows.length * 2));
+        }
+        if (rows[book] == null) {
+            rows[book] = new CoBorrowRow();
+        }
+        return rows[book];
+    }
+
+    private static long key(int member, int book) {
+        return (long) member << 32 | (book & 0xFFFFFFFFL);
+    }
+
+    private static class LoanEvent {
+        private final String isbn;
+        private final String memberId;
+        private final long day;
+        private final boolean issue;
+
+        LoanEvent(String isbn, String memberId, long day, boolean issue) {
+            this.isbn = isbn;
+            this.memberId = memberId;
+            this.day = day;
+            this.issue = issue;
+        }
+    }
+
+    /**
+     * One book's row of the co-borrow matrix: an open-addressing map from other book
+     * ordinals to pair counts, plus the TOP_PER_BOOK highest of them in descending order.
+     */
+    private static class CoBorrowRow {
+        private int[] keys = emptyKeys(8);
+        private int[] counts = new int[8];
+        private int used;
+        private final int[] top = new int[TOP_PER_BOOK];
+        private final int[] topCounts = new int[TOP_PER_BOOK];
+        private int topSize;
+
+        void increment(int other) {
+            if ((used + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            int slot = find(keys, other);
+            if (keys[slot] < 0) {
+                keys[slot] = other;
+                used++;
+            }
+            updateTop(other, ++counts[slot]);
+        }
+
+        // Counts only grow, so a book enters the top list exactly when it passes the smallest
+        private void updateTop(int other, int count) {
+            int position = -1;
+            for (int i = 0; i < topSize; i++) {
+                if (top[i] == other) {
+                    position = i;
+                    break;
+                }
+            }
+            if (position < 0) {
+                if (topSize < TOP_PER_BOOK) {
+                    position = topSize++;
+                } else if (count > topCounts[topSize - 1]) {
+                    position = topSize - 1;
+                } else {
+                    return;
+                }
+                top[position] = other;
+            }
+            topCounts[position] = count;
+            while (position > 0 && topCounts[position - 1] < count) {
+                top[position] = top[position - 1];
+                topCounts[position] = topCounts[position - 1];
+                position--;
+                top[position] = other;
+                topCounts[position] = count;
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = emptyKeys(oldKeys.length * 2);
+            counts = new int[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] >= 0) {
+                    int slot = find(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        // Slot holding the key, or the empty slot where it would go
+        private static int find(int[] keys, int key) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (keys[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int[] emptyKeys(int capacity) {
+            int[] keys = new int[capacity];
+            Arrays.fill(keys, -1);
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trigram index over member name, email and ID. Each field is lowercased and padded
+ * with two leading spaces and one trailing space, so a one or two character query is
+ * answered as a prefix of a field or word, and longer queries as substrings. Members
+ * sharing enough trigrams with the query are candidates even when the query has a typo;
+ * only the candidates' text is checked for an exact substring match. Every word of three
+ * or more letters is also indexed under its letters in sorted order, so a query with two
+ * letters swapped still shares a key with the word it meant.
+ * Readers don't lock; writers synchronize on the index so emptied posting sets can be
+ * removed safely.
+ */
+class MemberSearchIndex {
+    private static final int GRAM = 3;
+
+    // Trigram -> IDs of members whose text contains it
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+    // Member ID -> the normalized text that was indexed for it
+    private final Map<String, String> indexedText = new ConcurrentHashMap<>();
+
+    void add(Member member) {
+        String text = normalize(member.getName()) + '\n' + normalize(member.getEmail())
+                + '\n' + normalize(member.getMemberId());
+        Set<String> grams = fieldGrams(text);
+        synchronized (this) {
+            indexedText.put(member.getMemberId(), text);
+            for (String gram : grams) {
+                postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(member.getMemberId());
+            }
+        }
+    }
+
+    void remove(String memberId) {
+        synchronized (this) {
+            String text = indexedText.remove(memberId);
+            if (text == null) {
+                return;
+            }
+            for (String gram : fieldGrams(text)) {
+                Set<String> ids = postings.get(gram);
+                if (ids != null) {
+                    ids.remove(memberId);
+                    if (ids.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    // IDs of the best limit matches, best first. Exact substring matches rank above
+    // typo matches; ties go to the member sharing more grams, then by ID.
+    List<String> search(String query, int limit) {
+        String normalized = normalize(query);
+        Set<String> grams = queryGrams(normalized);
+        if (grams.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, Match.ORDER.reversed());
+
+        // An exact match has every one of these trigrams, so walking the rarest posting
+        // set and probing the others finds all of them
+        List<Set<String>> inner = postingSets(grams);
+        grams.addAll(wordGrams(normalized));
+        List<Set<String>> sets = postingSets(grams);
+        for (String candidate : inner.get(0)) {
+            if (containsAll(inner, candidate)) {
+                String text = indexedText.get(candidate);
+                if (text != null && text.contains(normalized)) {
+                    offer(best, new Match(candidate, true, count(sets, candidate)), limit);
+                }
+            }
+        }
+        if (best.size() >= limit) {
+            return drain(best);
+        }
+        // Nothing was pushed out, so every exact match is still in the queue
+        Set<String> exact = new HashSet<>();
+        for (Match match : best) {
+            exact.add(match.memberId);
+        }
+
+        // Near misses fill whatever the exact matches left. One typo breaks at most five of
+        // the grams (three trigrams, a word-edge gram and the word's letter key), so a near
+        // miss shares all but five of them; a third is the floor so short queries stay
+        // selective. Anyone sharing that many is in one of the rarest (n - required + 1)
+        // sets, so only those are scanned and the rest are probed per candidate. A member
+        // with every query word's letters in some order is a near miss too, since swapping
+        // two letters of a short word breaks all of its trigrams.
+        int required = grams.size() <= 2 ? grams.size() : Math.max((grams.size() + 2) / 3, grams.size() - 5);
+        List<Set<String>> keys = postingSets(letterKeys(normalized));
+        Set<String> candidates = new HashSet<>();
+        for (Set<String> ids : sets.subList(0, sets.size() - required + 1)) {
+            candidates.addAll(ids);
+        }
+        if (!keys.isEmpty()) {
+            candidates.addAll(keys.get(0));
+        }
+        candidates.removeAll(exact);
+        for (String candidate : candidates) {
+            // Once the queue is full its head is a near miss, and only members sharing at
+            // least as much can displace it
+            int atLeast = best.size() == limit ? Math.max(required, best.peek().shared) : required;
+            int shared = count(sets, candidate, atLeast);
+            boolean anagram = shared < required && !keys.isEmpty() && containsAll(keys, candidate);
+            if ((shared >= required || anagram) && indexedText.containsKey(candidate)) {
+                offer(best, new Match(candidate, false, anagram ? count(sets, candidate) : shared), limit);
+            }
+        }
+        return drain(best);
+    }
+
+    // Posting sets for the grams, smallest first
+    private List<Set<String>> postingSets(Set<String> grams) {
+        List<Set<String>> sets = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            sets.add(postings.getOrDefault(gram, Collections.emptySet()));
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+        return sets;
+    }
+
+    private static boolean containsAll(List<Set<String>> sets, String memberId) {
+        for (Set<String> ids : sets) {
+            if (!ids.contains(memberId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int count(List<Set<String>> sets, String memberId) {
+        return count(sets, memberId, 0);
+    }
+
+    // Stops early once the member can no longer share atLeast of the sets
+    private static int count(List<Set<String>> sets, String memberId, int atLeast) {
+        int shared = 0;
+        for (int i = 0; i < sets.size() && shared + sets.size() - i >= atLeast; i++) {
+            if (sets.get(i).contains(memberId)) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    // Keeps only the best limit matches; the queue's head is the worst of them
+    private static void offer(PriorityQueue<Match> best, Match match, int limit) {
+        if (best.size() == limit && Match.ORDER.compare(match, best.peek()) >= 0) {
+            return;
+        }
+        best.add(match);
+        if (best.size() > limit) {
+            best.poll();
+        }
+    }
+
+    private static List<String> drain(PriorityQueue<Match> best) {
+        List<String> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            results.add(best.poll().memberId);
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    // Short queries become a padded prefix gram; longer ones are split into their trigrams
+    private static Set<String> queryGrams(String text) {
+        Set<String> grams = new HashSet<>();
+        if (text.isEmpty()) {
+            return grams;
+        }
+        if (text.length() < GRAM) {
+            grams.add("  ".substring(text.length() - 1) + text);
+            return grams;
+        }
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    // Word-start and word-end grams and letter keys of a query, which survive a typo in the
+    // middle of a word or two swapped letters
+    private static Set<String> wordGrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (String word : text.split(" ")) {
+            if (word.length() >= GRAM) {
+                grams.add(" " + word.substring(0, 2));
+                grams.add(word.substring(word.length() - 2) + " ");
+            }
+        }
+        grams.addAll(letterKeys(text));
+        return grams;
+    }
+
+    private static Set<String> letterKeys(String text) {
+        Set<String> keys = new HashSet<>();
+        for (String word : text.split(" ")) {
+            if (word.length() >= GRAM) {
+                keys.add(letterKey(word));
+            }
+        }
+        return keys;
+    }
+
+    private static Set<String> fieldGrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (String field : text.split("\n", -1)) {
+            String padded = "  " + field + " ";
+            for (int i = 0; i + GRAM <= padded.length(); i++) {
+                grams.add(padded.substring(i, i + GRAM));
+            }
+            grams.addAll(letterKeys(field));
+        }
+        return grams;
+    }
+
+    // The word's letters in sorted order behind a newline, which no indexed trigram contains
+    private static String letterKey(String word) {
+        char[] letters = word.toCharArray();
+        Arrays.sort(letters);
+        return '\n' + new String(letters);
+    }
+
+    // Lowercase with runs of whitespace collapsed to a single space
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static class Match {
+        static final Comparator<Match> ORDER = Comparator.<Match>comparingInt(match -> match.exact ? 0 : 1)
+                .thenComparingInt(match -> -match.shared)
+                .thenComparing(match -> match.memberId);
+
+        private final String memberId;
+        private final boolean exact;
+        private final int shared;
+
+        Match(String memberId, boolean exact, int shared) {
+            this.memberId = memberId;
+            this.exact = exact;
+            this.shared = shared;
+        }
+    }
+}
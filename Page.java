@@ -0,0 +1,29 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a listing and the continuation token for the page after it. Tokens are
+ * opaque strings handed back to the method that produced the page; the last page has none.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextToken;
+
+    Page(List<T> items, String nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    // Null on the last page
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+}
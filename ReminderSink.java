@@ -0,0 +1,17 @@
+import java.util.List;
+
+/**
+ * Receives due-date reminders in batches from a DueDateReminderScheduler. A batch is
+ * never empty and delivery happens on the scheduler's thread.
+ */
+public interface ReminderSink {
+    ReminderSink CONSOLE = batch -> {
+        StringBuilder text = new StringBuilder();
+        for (DueDateReminder reminder : batch) {
+            text.append(reminder).append(System.lineSeparator());
+        }
+        System.out.print(text);
+    };
+
+    void deliver(List<DueDateReminder> batch);
+}
@@ -0,0 +1,50 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of repeated string values such as genres and authors. Each distinct value
+ * gets a small dense int code on first sight and keeps it for the life of the table,
+ * and everyone who interns an equal string gets the same String instance back.
+ * Lookups don't lock; new codes are assigned under the table's monitor.
+ */
+class SymbolTable {
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[16];
+    private volatile int size;
+
+    // Code for the value, assigning the next free one if it hasn't been seen before
+    int intern(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            if (code == null) {
+                code = size;
+                if (code == symbols.length) {
+                    symbols = Arrays.copyOf(symbols, code * 2);
+                }
+                symbols[code] = value;
+                size = code + 1;
+                codes.put(value, code);
+            }
+            return code;
+        }
+    }
+
+    // Code for the value, or -1 if it has never been interned
+    int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    String symbol(int code) {
+        return symbols[code];
+    }
+
+    int size() {
+        return size;
+    }
+}
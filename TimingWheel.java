@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel. Time is a plain long tick count (the library uses epoch days).
+ * Level 0 has one slot per tick; each higher level has slots 64 times wider than the one
+ * below. Entries move down a level as their slot comes due, so advancing the clock only
+ * touches entries that are about to fire. Scheduling and cancelling are O(1).
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    private final List<List<Timer<T>>[]> levels;
+    private final List<Timer<T>> due;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long startTick) {
+        this.levels = new ArrayList<>(LEVELS);
+        for (int i = 0; i < LEVELS; i++) {
+            levels.add(new List[SLOTS]);
+        }
+        this.due = new ArrayList<>();
+        this.currentTick = startTick;
+    }
+
+    // Deadlines at or before the current tick fire on the next advance
+    public synchronized Timer<T> schedule(T item, long deadline) {
+        Timer<T> timer = new Timer<>(item, deadline);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    // Moves the clock forward and hands every live entry whose deadline has passed to expired
+    public void advanceTo(long tick, Consumer<T> expired) {
+        List<T> fired = new ArrayList<>();
+        synchronized (this) {
+            collectDue(fired);
+            while (currentTick < tick) {
+                currentTick++;
+                cascade();
+                List<Timer<T>>[] level0 = levels.get(0);
+                int slot = (int) (currentTick & MASK);
+                List<Timer<T>> entries = level0[slot];
+                if (entries != null) {
+                    level0[slot] = null;
+                    collect(entries, fired);
+                }
+                collectDue(fired);
+            }
+        }
+        // Callbacks run outside the lock so they may schedule new timers
+        fired.forEach(expired);
+    }
+
+    public synchronized long getCurrentTick() {
+        return currentTick;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void place(Timer<T> timer) {
+        long delta = timer.deadline - currentTick;
+        if (delta <= 0) {
+            due.add(timer);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (SLOT_BITS * (level + 1)) || level == LEVELS - 1) {
+                int slot = (int) ((timer.deadline >>> (SLOT_BITS * level)) & MASK);
+                List<Timer<T>>[] slots = levels.get(level);
+                if (slots[slot] == null) {
+                    slots[slot] = new ArrayList<>();
+                }
+                slots[slot].add(timer);
+                return;
+            }
+        }
+    }
+
+    // When a lower level wraps around, the matching slot of the level above is redistributed
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return;
+            }
+            List<Timer<T>>[] slots = levels.get(level);
+            int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & MASK);
+            List<Timer<T>> entries = slots[slot];
+            if (entries != null) {
+                slots[slot] = null;
+                for (Timer<T> timer : entries) {
+                    if (timer.cancelled) {
+                        size--;
+                    } else {
+                        place(timer);
+                    }
+                }
+            }
+        }
+    }
+
+    private void collectDue(List<T> fired) {
+        if (!due.isEmpty()) {
+            List<Timer<T>> entries = new ArrayList<>(due);
+            due.clear();
+            collect(entries, fired);
+        }
+    }
+
+    private void collect(List<Timer<T>> timers, List<T> fired) {
+        for (Timer<T> timer : timers) {
+            if (timer.cancelled) {
+                size--;
+            } else if (timer.deadline <= currentTick) {
+                timer.cancelled = true;
+                size--;
+                fired.add(timer.item);
+            } else {
+                // Only reachable from the overflow level; put it back further down
+                place(timer);
+            }
+        }
+    }
+
+    /**
+     * Handle for a scheduled entry. Cancelling only marks it; the wheel drops it
+     * when its slot is next visited.
+     */
+    public static class Timer<T> {
+        private final T item;
+        private final long deadline;
+        private volatile boolean cancelled;
+
+        Timer(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Append-only transaction journal written through memory-mapped segment files.
+ * Every entry is a fixed-size binary record, so reading and writing never keep
+ * the log on the heap. A new segment file is started when the current one fills up.
+ * A journal created without a directory keeps the same segments in heap buffers
+ * instead, allocated as the first record of each one is written.
+ *
+ * Appending takes no lock: a writer claims the next record number, writes its record
+ * into that slot and sets the record's used marker last. Concurrent writers fill their
+ * slots in parallel, and only starting a new segment is serialized. Readers stop at the
+ * first record whose marker is not set yet, so they always see an unbroken prefix.
+ */
+public class TransactionJournal implements Closeable {
+    // Record layout: used marker (1) | epoch day (4) | text length (2) | UTF-8 text
+    static final int RECORD_SIZE = 256;
+    private static final int HEADER_SIZE = 7;
+    private static final int MAX_TEXT_BYTES = RECORD_SIZE - HEADER_SIZE;
+    private static final byte USED = 1;
+    private static final int DEFAULT_RECORDS_PER_SEGMENT = 4096;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory; // null for a journal kept on the heap
+    private final int recordsPerSegment;
+    private final List<Path> segments; // segment files, guarded by this
+    // Buffers by segment number. A journal on the heap keeps all of them; a file journal
+    // keeps only the two newest mapped, and maps an older one again if a late writer needs it.
+    private volatile ByteBuffer[] buffers = new ByteBuffer[0];
+    private final AtomicLong nextRecord = new AtomicLong();
+
+    public TransactionJournal() {
+        this.directory = null;
+        this.recordsPerSegment = DEFAULT_RECORDS_PER_SEGMENT;
+        this.segments = new ArrayList<>();
+    }
+
+    public TransactionJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT);
+    }
+
+    public TransactionJournal(Path directory, int recordsPerSegment) throws IOException {
+        if (recordsPerSegment <= 0) {
+            throw new IllegalArgumentException("recordsPerSegment must be positive");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        this.segments = listSegments(directory);
+
+        if (!segments.isEmpty()) {
+            int last = segments.size() - 1;
+            ByteBuffer current = mapSegment(segments.get(last));
+            buffers = new ByteBuffer[last + 1];
+            buffers[last] = current;
+            int used = 0;
+            while (used < recordsPerSegment && current.get(used * RECORD_SIZE) == USED) {
+                used++;
+            }
+            nextRecord.set((long) last * recordsPerSegment + used);
+        }
+    }
+
+    public void append(LocalDate date, String text) {
+        byte[] bytes = truncate(text.getBytes(StandardCharsets.UTF_8));
+        long record = nextRecord.getAndIncrement();
+        int index = (int) (record / recordsPerSegment);
+        ByteBuffer[] mapped = buffers;
+        ByteBuffer segment = index < mapped.length ? mapped[index] : null;
+        if (segment == null) {
+            segment = segment(index);
+        }
+
+        int start = (int) (record % recordsPerSegment) * RECORD_SIZE;
+        segment.putInt(start + 1, (int) date.toEpochDay());
+        segment.putShort(start + 5, (short) bytes.length);
+        segment.put(start + HEADER_SIZE, bytes);
+        // The marker goes in last so a partially written record is never read back
+        VarHandle.releaseFence();
+        segment.put(start, USED);
+    }
+
+    // Records appended so far, counting any that are still being written
+    public long size() {
+        return nextRecord.get();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Replays every entry from the oldest segment to the newest
+    public void forEach(Consumer<Entry> action) {
+        read(0, action);
+    }
+
+    // Replays only the last count entries
+    public void tail(int count, Consumer<Entry> action) {
+        read(Math.max(0, size() - count), action);
+    }
+
+    // Entries from the given sequence number up to the end of the log as it stands now,
+    // read one record at a time as the stream is consumed; only the segment being read is mapped
+    public Stream<Entry> stream(long fromSequence) {
+        long end = nextRecord.get();
+        List<Path> files;
+        synchronized (this) {
+            files = new ArrayList<>(segments);
+        }
+        ByteBuffer[] heap = directory == null ? buffers : null;
+        return StreamSupport.stream(new EntrySpliterator(files, heap, Math.max(0, fromSequence), end), false);
+    }
+
+    private void read(long fromSequence, Consumer<Entry> action) {
+        stream(fromSequence).forEach(action);
+    }
+
+    @Override
+    public void close() throws IOException {
+        ByteBuffer[] mapped = buffers;
+        if (directory != null && mapped.length > 0) {
+            ((MappedByteBuffer) mapped[mapped.length - 1]).force();
+        }
+    }
+
+    // Where the segment files live, or null for a journal kept on the heap
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // The slow path of append: starts every segment up to index that doesn't exist yet, or
+    // maps an old one again for a writer that fell behind
+    private synchronized ByteBuffer segment(int index) {
+        ByteBuffer[] mapped = buffers;
+        if (index < mapped.length && mapped[index] != null) {
+            return mapped[index];
+        }
+        try {
+            if (index < mapped.length) {
+                return mapSegment(segments.get(index));
+            }
+            mapped = Arrays.copyOf(mapped, index + 1);
+            for (int next = buffers.length; next <= index; next++) {
+                if (directory == null) {
+                    mapped[next] = ByteBuffer.allocate(recordsPerSegment * RECORD_SIZE);
+                    continue;
+                }
+                Path segment = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, next, SEGMENT_SUFFIX));
+                mapped[next] = mapSegment(segment);
+                segments.add(segment);
+                if (next >= 2 && mapped[next - 2] != null) {
+                    ((MappedByteBuffer) mapped[next - 2]).force();
+                    mapped[next - 2] = null;
+                }
+            }
+            buffers = mapped;
+            return mapped[index];
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not roll over journal segment", e);
+        }
+    }
+
+    // The mapping stays valid after the channel is closed
+    private ByteBuffer mapSegment(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+        }
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    // Cuts oversized text on a UTF-8 character boundary
+    private static byte[] truncate(byte[] bytes) {
+        if (bytes.length <= MAX_TEXT_BYTES) {
+            return bytes;
+        }
+        int length = MAX_TEXT_BYTES;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    // Walks the records of a fixed list of segments, mapping each file as it is reached.
+    // Stops early at a record that is still being written, so what it returns has no gaps.
+    private class EntrySpliterator extends Spliterators.AbstractSpliterator<Entry> {
+        private final List<Path> files;
+        private final ByteBuffer[] buffers; // the heap segments instead of files, or null
+        private final long end;
+        private final byte[] text = new byte[MAX_TEXT_BYTES];
+        private long next;
+        private int mappedSegment = -1;
+        private ByteBuffer segment;
+
+        EntrySpliterator(List<Path> files, ByteBuffer[] buffers, long from, long end) {
+            super(Math.max(0, end - from), Spliterator.ORDERED | Spliterator.NONNULL);
+            this.files = files;
+            this.buffers = buffers;
+            this.next = from;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Entry> action) {
+            if (next >= end) {
+                return false;
+            }
+            int s = (int) (next / recordsPerSegment);
+            if (s >= (buffers != null ? buffers.length : files.size())) {
+                return false; // claimed, but its segment isn't started yet
+            }
+            if (s != mappedSegment && buffers != null) {
+                segment = buffers[s];
+                mappedSegment = s;
+            } else if (s != mappedSegment) {
+                try (FileChannel readChannel = FileChannel.open(files.get(s), StandardOpenOption.READ)) {
+                    segment = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                    mappedSegment = s;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read journal segment " + files.get(s), e);
+                }
+            }
+            int start = (int) (next % recordsPerSegment) * RECORD_SIZE;
+            if (segment.get(start) != USED) {
+                return false;
+            }
+            VarHandle.acquireFence();
+            int length = segment.getShort(start + 5);
+            segment.get(start + HEADER_SIZE, text, 0, length);
+            action.accept(new Entry(next++, LocalDate.ofEpochDay(segment.getInt(start + 1)),
+                    new String(text, 0, length, StandardCharsets.UTF_8)));
+            return true;
+        }
+    }
+
+    public static class Entry {
+        private final long sequence;
+        private final LocalDate date;
+        private final String text;
+
+        Entry(long sequence, LocalDate date, String text) {
+            this.sequence = sequence;
+            this.date = date;
+            this.text = text;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return date + " - " + text;
+        }
+    }
+}
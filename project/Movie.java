@@ -3,6 +3,8 @@
  * Contains all movie properties and utility methods
  */
 public class Movie {
+    private int id; // assigned by MovieDatabase when added, 0 while in no database
+    private MovieDatabase database; // the database holding this movie, which reindexes it on changes
     private String title;
     private String director;
     private String genre;
@@ -21,6 +23,10 @@ public class Movie {
     }
     
     // Getters
+    public int getId() {
+        return id;
+    }
+    
     public String getTitle() {
         return title;
     }
@@ -46,30 +52,50 @@ public class Movie {
     }
     
     // Setters
+    void setId(int id) {
+        this.id = id;
+    }
+    
+    void setDatabase(MovieDatabase database) {
+        this.database = database;
+    }
+    
+    // Title, director, genre, year and rating are indexed, so while the movie is in a
+    // database the change goes through it. A title and year already taken by another
+    // movie there is refused with an IllegalArgumentException.
     public void setTitle(String title) {
-        this.title = title;
+        change(title, year, () -> this.title = title);
     }
     
     public void setDirector(String director) {
-        this.director = director;
+        change(title, year, () -> this.director = director);
     }
     
     public void setGenre(String genre) {
-        this.genre = genre;
+        change(title, year, () -> this.genre = genre);
     }
     
     public void setYear(int year) {
-        this.year = year;
+        change(title, year, () -> this.year = year);
     }
     
     public void setRating(double rating) {
-        this.rating = rating;
+        change(title, year, () -> this.rating = rating);
     }
     
     public void setDescription(String description) {
         this.description = description;
     }
     
+    private void change(String newTitle, int newYear, Runnable update) {
+        MovieDatabase owner = database;
+        if (owner == null) {
+            update.run();
+        } else {
+            owner.updateMovie(this, newTitle, newYear, update);
+        }
+    }
+    
     // Method to display movie details in a formatted way
     public void displayDetails() {
         System.out.println("=" .repeat(60));
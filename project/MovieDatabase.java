@@ -1,15 +1,76 @@
 import java.util.*;
+import java.util.function.IntToDoubleFunction;
 
 /**
  * MovieDatabase class to manage the collection of movies
  * Provides methods for adding, searching, and retrieving movies
+ * Every movie gets a numeric id when added; ids stay valid until that movie is removed
+ * All public methods are synchronized, so one database can be shared between threads
  */
 public class MovieDatabase {
+    // Once more than this many slots are empty, and they outnumber the movies, the slots are compacted
+    private static final int COMPACT_MIN_FREE_SLOTS = 1024;
+    // Highest rated first, ties broken by id
+    private static final Comparator<Movie> RATING_ORDER = Comparator.comparingDouble(Movie::getRating).reversed()
+                                                                    .thenComparingInt(Movie::getId);
+    
+    // Movies by slot. A removed movie leaves a null slot that the next addition reuses.
     private List<Movie> movies;
+    private Deque<Integer> freeSlots;
+    private int movieCount;
+    // Movie id -> slot, or -1 once removed. Ids count up from 1 and are never reused, so
+    // an id stays valid however the slots are reused or compacted.
+    private int[] slotOfId;
+    private int nextId;
+    // Case-folded title and year -> movie, so duplicate checks don't scan the list
+    private Map<String, Movie> titleYearIndex;
+    // Every movie, highest rated first, ties broken by id, so top-k reads just walk the
+    // front of the set. A movie's setters go through updateMovie while it is in the
+    // database, so it is never changed while sitting in these sets.
+    private NavigableSet<Movie> ratingIndex;
+    // The same ordering kept per lowercase genre and per year, so top-k for one genre or
+    // year is the front of its own set rather than a filtered walk of every movie
+    private Map<String, NavigableSet<Movie>> genreRatings;
+    private Map<Integer, NavigableSet<Movie>> yearRatings;
+    // Secondary indexes from lowercase genre, lowercase director and year to the slots
+    // of matching movies. Years are an array of bitsets starting at firstYear.
+    // Combined filters intersect the bitsets instead of scanning the movies.
+    private Map<String, BitSet> genreIndex;
+    private Map<String, BitSet> directorIndex;
+    private BitSet[] yearIndex;
+    private int firstYear;
+    // Year and rating by slot, and sorted copies of both with the ids they came from, for
+    // range queries by binary search. The sorted copies cover ids below sortedIdLimit;
+    // movies added since are checked one by one until enough of them, or of removals from
+    // the sorted part, pile up to be worth sorting again.
+    private int[] yearColumn;
+    private double[] ratingColumn;
+    private int[] sortedYears;
+    private int[] yearOrder;
+    private double[] sortedRatings;
+    private int[] ratingOrder;
+    private int sortedCount;
+    private int sortedIdLimit;
+    private int removedSinceSort;
+    // Set when a movie in the sorted part changes year or rating, so the next range query sorts again
+    private boolean sortedStale;
     
     // Constructor
     public MovieDatabase() {
         this.movies = new ArrayList<>();
+        this.freeSlots = new ArrayDeque<>();
+        this.slotOfId = new int[16];
+        this.nextId = 1;
+        this.sortedIdLimit = 1;
+        this.titleYearIndex = new HashMap<>();
+        this.ratingIndex = new TreeSet<>(RATING_ORDER);
+        this.genreRatings = new HashMap<>();
+        this.yearRatings = new HashMap<>();
+        this.genreIndex = new HashMap<>();
+        this.directorIndex = new HashMap<>();
+        this.yearIndex = new BitSet[0];
+        this.yearColumn = new int[16];
+        this.ratingColumn = new double[16];
         initializeSampleData();
     }
     
@@ -31,35 +92,216 @@ public class MovieDatabase {
                 "The presidencies of Kennedy and Johnson, the Vietnam War, and other historical events unfold from the perspective of an Alabama man."));
     }
     
-    // Add a new movie to the database
-    public boolean addMovie(Movie movie) {
-        if (movie == null) {
-            return false;
+    // Add a new movie to the database and give it an id
+    public synchronized boolean addMovie(Movie movie) {
+        if (movie == null || movie.getId() != 0) {
+            return false; // No movie, or one that is already in a database
         }
         
         // Check if movie already exists (same title and year)
-        for (Movie existingMovie : movies) {
-            if (existingMovie.getTitle().equalsIgnoreCase(movie.getTitle()) && 
-                existingMovie.getYear() == movie.getYear()) {
-                return false; // Movie already exists
-            }
+        if (titleYearIndex.putIfAbsent(titleKey(movie.getTitle(), movie.getYear()), movie) != null) {
+            return false; // Movie already exists
+        }
+        
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = movies.size();
+            movies.add(movie);
+        } else {
+            slot = freeSlots.pop();
+            movies.set(slot, movie);
+        }
+        int id = nextId++;
+        if (id == slotOfId.length) {
+            slotOfId = Arrays.copyOf(slotOfId, id * 2);
         }
+        slotOfId[id] = slot;
+        movie.setId(id);
+        movie.setDatabase(this);
+        movieCount++;
         
-        movies.add(movie);
+        rate(movie);
+        indexSlot(movie, slot);
+        setColumns(movie, slot);
         return true;
     }
     
+    // Applies a change to a movie's indexed fields: the movie leaves every index, changes,
+    // and goes back in. newTitle and newYear are its title and year after the change.
+    synchronized void updateMovie(Movie movie, String newTitle, int newYear, Runnable update) {
+        if (getMovieById(movie.getId()) != movie) {
+            update.run(); // removed meanwhile
+            return;
+        }
+        String oldKey = titleKey(movie.getTitle(), movie.getYear());
+        String newKey = titleKey(newTitle, newYear);
+        Movie holder = titleYearIndex.get(newKey);
+        if (holder != null && holder != movie) {
+            throw new IllegalArgumentException("Another movie is already called " + newTitle + " (" + newYear + ")");
+        }
+        
+        int slot = slotOfId[movie.getId()];
+        titleYearIndex.remove(oldKey);
+        unrate(movie);
+        unindexSlot(movie, slot);
+        update.run();
+        titleYearIndex.put(newKey, movie);
+        rate(movie);
+        indexSlot(movie, slot);
+        if (movie.getId() < sortedIdLimit
+                && (yearColumn[slot] != movie.getYear() || ratingColumn[slot] != movie.getRating())) {
+            sortedStale = true;
+        }
+        setColumns(movie, slot);
+    }
+    
+    private void rate(Movie movie) {
+        ratingIndex.add(movie);
+        genreRatings.computeIfAbsent(movie.getGenre().toLowerCase(), genre -> new TreeSet<>(RATING_ORDER)).add(movie);
+        yearRatings.computeIfAbsent(movie.getYear(), year -> new TreeSet<>(RATING_ORDER)).add(movie);
+    }
+    
+    // The movie's id must still be set, since the ordering uses it
+    private void unrate(Movie movie) {
+        ratingIndex.remove(movie);
+        removeRated(genreRatings, movie.getGenre().toLowerCase(), movie);
+        removeRated(yearRatings, movie.getYear(), movie);
+    }
+    
+    private void setColumns(Movie movie, int slot) {
+        if (slot >= yearColumn.length) {
+            yearColumn = Arrays.copyOf(yearColumn, Math.max(slot + 1, yearColumn.length * 2));
+            ratingColumn = Arrays.copyOf(ratingColumn, yearColumn.length);
+        }
+        yearColumn[slot] = movie.getYear();
+        ratingColumn[slot] = movie.getRating();
+    }
+    
+    private void indexSlot(Movie movie, int slot) {
+        genreIndex.computeIfAbsent(movie.getGenre().toLowerCase(), genre -> new BitSet()).set(slot);
+        directorIndex.computeIfAbsent(movie.getDirector().toLowerCase(), director -> new BitSet()).set(slot);
+        yearBits(movie.getYear()).set(slot);
+    }
+    
+    private void unindexSlot(Movie movie, int slot) {
+        clearSlot(genreIndex, movie.getGenre().toLowerCase(), slot);
+        clearSlot(directorIndex, movie.getDirector().toLowerCase(), slot);
+        yearIndex[movie.getYear() - firstYear].clear(slot);
+    }
+    
+    // Drops a movie from a per-value rating set, and the set once it is empty
+    private static <K> void removeRated(Map<K, NavigableSet<Movie>> index, K key, Movie movie) {
+        NavigableSet<Movie> rated = index.get(key);
+        rated.remove(movie);
+        if (rated.isEmpty()) {
+            index.remove(key);
+        }
+    }
+    
+    // Drops a value from the index once its last movie is gone
+    private static void clearSlot(Map<String, BitSet> index, String key, int slot) {
+        BitSet slots = index.get(key);
+        slots.clear(slot);
+        if (slots.isEmpty()) {
+            index.remove(key);
+        }
+    }
+    
+    // The year's bitset, growing the year array to take it in if needed
+    private BitSet yearBits(int year) {
+        if (yearIndex.length == 0) {
+            firstYear = year;
+        }
+        if (year < firstYear) {
+            BitSet[] grown = new BitSet[yearIndex.length + (firstYear - year)];
+            System.arraycopy(yearIndex, 0, grown, firstYear - year, yearIndex.length);
+            yearIndex = grown;
+            firstYear = year;
+        } else if (year - firstYear >= yearIndex.length) {
+            yearIndex = Arrays.copyOf(yearIndex, year - firstYear + 1);
+        }
+        if (yearIndex[year - firstYear] == null) {
+            yearIndex[year - firstYear] = new BitSet();
+        }
+        return yearIndex[year - firstYear];
+    }
+    
+    // Slots of movies released between fromYear and toYear, inclusive
+    private BitSet yearRange(int fromYear, int toYear) {
+        BitSet slots = new BitSet();
+        int from = Math.max(fromYear, firstYear);
+        int to = Math.min(toYear, firstYear + yearIndex.length - 1);
+        for (int year = from; year <= to; year++) {
+            if (yearIndex[year - firstYear] != null) {
+                slots.or(yearIndex[year - firstYear]);
+            }
+        }
+        return slots;
+    }
+    
+    // Union of the entries whose key contains the search term
+    private static BitSet keysContaining(Map<String, BitSet> index, String searchTerm) {
+        BitSet slots = new BitSet();
+        String term = searchTerm.toLowerCase();
+        for (Map.Entry<String, BitSet> entry : index.entrySet()) {
+            if (entry.getKey().contains(term)) {
+                slots.or(entry.getValue());
+            }
+        }
+        return slots;
+    }
+    
+    private List<Movie> moviesAt(BitSet slots) {
+        List<Movie> results = new ArrayList<>(slots.cardinality());
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            results.add(movies.get(slot));
+        }
+        return results;
+    }
+    
+    // Folds case the same way equalsIgnoreCase compares characters, so the index
+    // treats titles as duplicates exactly when the old list scan did
+    private static String titleKey(String title, int year) {
+        StringBuilder key = new StringBuilder(title.length() + 6);
+        for (int i = 0; i < title.length(); i++) {
+            key.append(Character.toLowerCase(Character.toUpperCase(title.charAt(i))));
+        }
+        return key.append('|').append(year).toString();
+    }
+    
     // Get all movies
-    public List<Movie> getAllMovies() {
-        return new ArrayList<>(movies);
+    public synchronized List<Movie> getAllMovies() {
+        List<Movie> results = new ArrayList<>(movieCount);
+        for (Movie movie : movies) {
+            if (movie != null) {
+                results.add(movie);
+            }
+        }
+        return results;
     }
     
     // Search movies by various criteria
-    public List<Movie> searchMovies(String searchTerm, String searchType) {
+    public synchronized List<Movie> searchMovies(String searchTerm, String searchType) {
+        // Genre, director and year searches go through the indexes
+        switch (searchType.toLowerCase()) {
+            case "genre":
+                return moviesAt(keysContaining(genreIndex, searchTerm));
+            case "director":
+                return moviesAt(keysContaining(directorIndex, searchTerm));
+            case "year":
+                try {
+                    return getMoviesByYear(Integer.parseInt(searchTerm.trim()));
+                } catch (NumberFormatException e) {
+                    return new ArrayList<>();
+                }
+            default:
+                break;
+        }
+        
         List<Movie> results = new ArrayList<>();
         
         for (Movie movie : movies) {
-            if (movie.matchesSearch(searchTerm, searchType)) {
+            if (movie != null && movie.matchesSearch(searchTerm, searchType)) {
                 results.add(movie);
             }
         }
@@ -67,76 +309,328 @@ public class MovieDatabase {
         return results;
     }
     
-    // Get movie by index
-    public Movie getMovieByIndex(int index) {
-        if (index >= 0 && index < movies.size()) {
-            return movies.get(index);
+    // Get movie by id, or null if there is no such movie
+    public synchronized Movie getMovieById(int id) {
+        if (id > 0 && id < nextId && slotOfId[id] >= 0) {
+            return movies.get(slotOfId[id]);
         }
         return null;
     }
     
     // Get total number of movies
-    public int getMovieCount() {
-        return movies.size();
+    public synchronized int getMovieCount() {
+        return movieCount;
     }
     
-    // Remove movie by index
-    public boolean removeMovie(int index) {
-        if (index >= 0 && index < movies.size()) {
-            movies.remove(index);
-            return true;
+    // Remove movie by id. The slot is left empty for the next addition, so nothing moves.
+    public synchronized boolean removeMovie(int id) {
+        Movie removed = getMovieById(id);
+        if (removed == null) {
+            return false;
+        }
+        
+        int slot = slotOfId[id];
+        titleYearIndex.remove(titleKey(removed.getTitle(), removed.getYear()));
+        unrate(removed);
+        unindexSlot(removed, slot);
+        movies.set(slot, null);
+        freeSlots.push(slot);
+        slotOfId[id] = -1;
+        removed.setId(0);
+        removed.setDatabase(null);
+        movieCount--;
+        if (id < sortedIdLimit) {
+            removedSinceSort++;
         }
-        return false;
+        
+        if (freeSlots.size() > COMPACT_MIN_FREE_SLOTS && freeSlots.size() > movieCount) {
+            compact();
+        }
+        return true;
     }
     
-    // Get movies by genre
-    public List<Movie> getMoviesByGenre(String genre) {
-        return searchMovies(genre, "genre");
+    // Moves every movie down into the lowest slots, keeping their order, and rebuilds the
+    // slot indexes and columns. Ids and the sorted columns, which hold ids, are unaffected.
+    private void compact() {
+        List<Movie> compacted = new ArrayList<>(movieCount);
+        for (Movie movie : movies) {
+            if (movie != null) {
+                slotOfId[movie.getId()] = compacted.size();
+                compacted.add(movie);
+            }
+        }
+        movies = compacted;
+        freeSlots.clear();
+        
+        genreIndex.clear();
+        directorIndex.clear();
+        yearIndex = new BitSet[0];
+        yearColumn = new int[Math.max(16, movieCount)];
+        ratingColumn = new double[yearColumn.length];
+        for (int slot = 0; slot < movies.size(); slot++) {
+            indexSlot(movies.get(slot), slot);
+            setColumns(movies.get(slot), slot);
+        }
+    }
+    
+    // Get movies by genre (any part of it, any case)
+    public synchronized List<Movie> getMoviesByGenre(String genre) {
+        return moviesAt(keysContaining(genreIndex, genre));
     }
     
     // Get movies by year
-    public List<Movie> getMoviesByYear(int year) {
-        return searchMovies(String.valueOf(year), "year");
+    public synchronized List<Movie> getMoviesByYear(int year) {
+        return moviesAt(yearRange(year, year));
     }
     
-    // Get movies by director
-    public List<Movie> getMoviesByDirector(String director) {
-        return searchMovies(director, "director");
+    // Get movies by director (any part of the name, any case)
+    public synchronized List<Movie> getMoviesByDirector(String director) {
+        return moviesAt(keysContaining(directorIndex, director));
     }
     
-    // Get top rated movies
-    public List<Movie> getTopRatedMovies(int count) {
-        List<Movie> sortedMovies = new ArrayList<>(movies);
-        sortedMovies.sort((m1, m2) -> Double.compare(m2.getRating(), m1.getRating()));
+    // Get movies matching every given filter; genre and director must match whole (any case),
+    // and a null genre or director matches any
+    public synchronized List<Movie> findMovies(String genre, String director, int fromYear, int toYear) {
+        BitSet slots = yearRange(fromYear, toYear);
+        if (genre != null) {
+            slots.and(genreIndex.getOrDefault(genre.toLowerCase(), new BitSet()));
+        }
+        if (director != null) {
+            slots.and(directorIndex.getOrDefault(director.toLowerCase(), new BitSet()));
+        }
+        return moviesAt(slots);
+    }
+    
+    // Get movies released between fromYear and toYear with a rating between minRating and
+    // maxRating, all inclusive. Matches are found as the iterator is read, in no particular
+    // order. Movies removed meanwhile are skipped; movies added meanwhile may not be seen.
+    public synchronized Iterator<Movie> findMoviesInRange(int fromYear, int toYear, double minRating, double maxRating) {
+        int unsorted = nextId - sortedIdLimit + removedSinceSort;
+        if (sortedStale || unsorted > Math.max(1024, sortedCount / 8)) {
+            sortColumns();
+        }
+        
+        // Walk whichever sorted range is shorter and check the other condition per movie
+        int yearFrom = lowerBound(sortedYears, sortedCount, fromYear);
+        int yearTo = lowerBound(sortedYears, sortedCount, toYear + 1L);
+        int ratingFrom = lowerBound(sortedRatings, sortedCount, minRating, false);
+        int ratingTo = lowerBound(sortedRatings, sortedCount, maxRating, true);
+        if (ratingTo - ratingFrom < yearTo - yearFrom) {
+            return new RangeIterator(ratingOrder, ratingFrom, ratingTo, fromYear, toYear, minRating, maxRating);
+        }
+        return new RangeIterator(yearOrder, yearFrom, yearTo, fromYear, toYear, minRating, maxRating);
+    }
+    
+    private void sortColumns() {
+        int[] slots = new int[movieCount];
+        int count = 0;
+        for (int slot = 0; slot < movies.size(); slot++) {
+            if (movies.get(slot) != null) {
+                slots[count++] = slot;
+            }
+        }
+        
+        int[] byYear = sortedSlots(slots.clone(), slot -> yearColumn[slot]);
+        int[] years = new int[count];
+        for (int i = 0; i < count; i++) {
+            years[i] = yearColumn[byYear[i]];
+            byYear[i] = movies.get(byYear[i]).getId();
+        }
+        int[] byRating = sortedSlots(slots, slot -> ratingColumn[slot]);
+        double[] ratings = new double[count];
+        for (int i = 0; i < count; i++) {
+            ratings[i] = ratingColumn[byRating[i]];
+            byRating[i] = movies.get(byRating[i]).getId();
+        }
+        
+        // Fresh arrays each time, so iterators over the previous ones are undisturbed
+        sortedYears = years;
+        yearOrder = byYear;
+        sortedRatings = ratings;
+        ratingOrder = byRating;
+        sortedCount = count;
+        sortedIdLimit = nextId;
+        removedSinceSort = 0;
+        sortedStale = false;
+    }
+    
+    // The slots ordered by key, using a merge sort on int arrays so nothing is boxed
+    private static int[] sortedSlots(int[] order, IntToDoubleFunction key) {
+        int count = order.length;
+        int[] buffer = new int[count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int from = 0; from < count; from += 2 * width) {
+                int middle = Math.min(from + width, count);
+                int to = Math.min(from + 2 * width, count);
+                int left = from;
+                int right = middle;
+                int out = from;
+                while (left < middle && right < to) {
+                    buffer[out++] = key.applyAsDouble(order[right]) < key.applyAsDouble(order[left])
+                                    ? order[right++] : order[left++];
+                }
+                while (left < middle) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < to) {
+                    buffer[out++] = order[right++];
+                }
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+    
+    // Index of the first value >= key in sorted[0..count)
+    private static int lowerBound(int[] sorted, int count, long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    // Index of the first value >= key in sorted[0..count), or > key when past is set
+    private static int lowerBound(double[] sorted, int count, double key, boolean past) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key || (past && sorted[middle] == key)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    // Walks a slice of the ids in one sorted column, then the ids added since it was
+    // sorted, returning the movies still present whose year and rating are both in range
+    private class RangeIterator implements Iterator<Movie> {
+        private final int[] order;
+        private final int end;
+        private final int tailEnd;
+        private final int fromYear;
+        private final int toYear;
+        private final double minRating;
+        private final double maxRating;
+        private int next;
+        private int tailNext;
+        private Movie pending;
+        
+        RangeIterator(int[] order, int from, int end, int fromYear, int toYear, double minRating, double maxRating) {
+            this.order = order;
+            this.next = from;
+            this.end = end;
+            this.tailNext = sortedIdLimit;
+            this.tailEnd = nextId;
+            this.fromYear = fromYear;
+            this.toYear = toYear;
+            this.minRating = minRating;
+            this.maxRating = maxRating;
+        }
         
-        return sortedMovies.subList(0, Math.min(count, sortedMovies.size()));
+        @Override
+        public boolean hasNext() {
+            synchronized (MovieDatabase.this) {
+                while (pending == null && next < end) {
+                    pending = matching(order[next++]);
+                }
+                while (pending == null && tailNext < tailEnd) {
+                    pending = matching(tailNext++);
+                }
+                return pending != null;
+            }
+        }
+        
+        @Override
+        public Movie next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Movie movie = pending;
+            pending = null;
+            return movie;
+        }
+        
+        // The movie with this id if it is still present and in range
+        private Movie matching(int id) {
+            int slot = slotOfId[id];
+            if (slot < 0) {
+                return null;
+            }
+            int year = yearColumn[slot];
+            double rating = ratingColumn[slot];
+            if (year >= fromYear && year <= toYear && rating >= minRating && rating <= maxRating) {
+                return movies.get(slot);
+            }
+            return null;
+        }
+    }
+    
+    // Get top rated movies
+    public synchronized List<Movie> getTopRatedMovies(int count) {
+        return topRated(count, ratingIndex);
+    }
+    
+    // Get top rated movies of one genre
+    public synchronized List<Movie> getTopRatedMoviesByGenre(String genre, int count) {
+        return topRated(count, genreRatings.getOrDefault(genre.toLowerCase(), Collections.emptyNavigableSet()));
+    }
+    
+    // Get top rated movies of one year
+    public synchronized List<Movie> getTopRatedMoviesByYear(int year, int count) {
+        return topRated(count, yearRatings.getOrDefault(year, Collections.emptyNavigableSet()));
+    }
+    
+    // The first count movies of a rating-ordered set
+    private static List<Movie> topRated(int count, NavigableSet<Movie> rated) {
+        List<Movie> results = new ArrayList<>(Math.max(0, Math.min(count, rated.size())));
+        for (Movie movie : rated) {
+            if (results.size() >= count) {
+                break;
+            }
+            results.add(movie);
+        }
+        return results;
     }
     
     // Get statistics
-    public void displayStatistics() {
-        if (movies.isEmpty()) {
+    public synchronized void displayStatistics() {
+        if (movieCount == 0) {
             System.out.println("No movies in database.");
             return;
         }
         
+        List<Movie> allMovies = getAllMovies();
+        
         System.out.println("\n" + "=".repeat(50));
         System.out.println("DATABASE STATISTICS");
         System.out.println("=".repeat(50));
         
-        System.out.printf("Total Movies: %d%n", movies.size());
+        System.out.printf("Total Movies: %d%n", movieCount);
         
         // Calculate average rating
-        double averageRating = movies.stream()
+        double averageRating = allMovies.stream()
                                     .mapToDouble(Movie::getRating)
                                     .average()
                                     .orElse(0.0);
         System.out.printf("Average Rating: %.1f%n", averageRating);
         
         // Find most recent and oldest movie
-        Movie newestMovie = movies.stream()
+        Movie newestMovie = allMovies.stream()
                                  .max(Comparator.comparing(Movie::getYear))
                                  .orElse(null);
-        Movie oldestMovie = movies.stream()
+        Movie oldestMovie = allMovies.stream()
                                  .min(Comparator.comparing(Movie::getYear))
                                  .orElse(null);
         
@@ -149,7 +643,7 @@ public class MovieDatabase {
         
         // Genre distribution
         Map<String, Integer> genreCount = new HashMap<>();
-        for (Movie movie : movies) {
+        for (Movie movie : allMovies) {
             genreCount.put(movie.getGenre(), genreCount.getOrDefault(movie.getGenre(), 0) + 1);
         }
         
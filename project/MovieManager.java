@@ -124,7 +124,7 @@ public class MovieManager {
         
         if (database.addMovie(newMovie)) {
             System.out.println("✓ Movie added successfully!");
-            System.out.println("Movie: " + newMovie);
+            System.out.println("Movie: " + newMovie + " [ID " + newMovie.getId() + "]");
         } else {
             System.out.println("✗ Error: Movie with the same title and year already exists!");
         }
@@ -142,11 +142,11 @@ public class MovieManager {
         System.out.println("ALL MOVIES IN DATABASE (" + movies.size() + " movies)");
         System.out.println("=".repeat(90));
         System.out.printf("%-4s %-25s %-20s %-12s %-6s %-6s%n", 
-                         "#", "TITLE", "DIRECTOR", "GENRE", "YEAR", "RATING");
+                         "ID", "TITLE", "DIRECTOR", "GENRE", "YEAR", "RATING");
         System.out.println("-".repeat(90));
         
-        for (int i = 0; i < movies.size(); i++) {
-            movies.get(i).displayTableRow(i + 1);
+        for (Movie movie : movies) {
+            movie.displayTableRow(movie.getId());
         }
         System.out.println("=".repeat(90));
     }
@@ -195,11 +195,11 @@ public class MovieManager {
         System.out.println("SEARCH RESULTS (" + results.size() + " movies found)");
         System.out.println("=".repeat(90));
         System.out.printf("%-4s %-25s %-20s %-12s %-6s %-6s%n", 
-                         "#", "TITLE", "DIRECTOR", "GENRE", "YEAR", "RATING");
+                         "ID", "TITLE", "DIRECTOR", "GENRE", "YEAR", "RATING");
         System.out.println("-".repeat(90));
         
-        for (int i = 0; i < results.size(); i++) {
-            results.get(i).displayTableRow(i + 1);
+        for (Movie movie : results) {
+            movie.displayTableRow(movie.getId());
         }
         System.out.println("=".repeat(90));
     }
@@ -211,19 +211,19 @@ public class MovieManager {
             return;
         }
         
-        int index = getIntInput("\nEnter movie number to view details (0 to cancel): ");
+        int id = getIntInput("\nEnter movie ID to view details (0 to cancel): ");
         
-        if (index == 0) {
+        if (id == 0) {
             return;
         }
         
-        Movie movie = database.getMovieByIndex(index - 1);
+        Movie movie = database.getMovieById(id);
         
         if (movie != null) {
             System.out.println();
             movie.displayDetails();
         } else {
-            System.out.println("Error: Invalid movie number!");
+            System.out.println("Error: Invalid movie ID!");
         }
     }
     
@@ -246,11 +246,11 @@ public class MovieManager {
         System.out.println("TOP " + Math.min(count, topMovies.size()) + " RATED MOVIES");
         System.out.println("=".repeat(90));
         System.out.printf("%-4s %-25s %-20s %-12s %-6s %-6s%n", 
-                         "#", "TITLE", "DIRECTOR", "GENRE", "YEAR", "RATING");
+                         "ID", "TITLE", "DIRECTOR", "GENRE", "YEAR", "RATING");
         System.out.println("-".repeat(90));
         
-        for (int i = 0; i < topMovies.size(); i++) {
-            topMovies.get(i).displayTableRow(i + 1);
+        for (Movie movie : topMovies) {
+            movie.displayTableRow(movie.getId());
         }
         System.out.println("=".repeat(90));
     }
@@ -262,13 +262,13 @@ public class MovieManager {
             return;
         }
         
-        int index = getIntInput("\nEnter movie number to remove (0 to cancel): ");
+        int id = getIntInput("\nEnter movie ID to remove (0 to cancel): ");
         
-        if (index == 0) {
+        if (id == 0) {
             return;
         }
         
-        Movie movie = database.getMovieByIndex(index - 1);
+        Movie movie = database.getMovieById(id);
         
         if (movie != null) {
             System.out.println("\nMovie to be removed:");
@@ -278,7 +278,7 @@ public class MovieManager {
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("y") || confirm.equals("yes")) {
-                if (database.removeMovie(index - 1)) {
+                if (database.removeMovie(id)) {
                     System.out.println("✓ Movie removed successfully!");
                 } else {
                     System.out.println("✗ Error removing movie!");
@@ -287,7 +287,7 @@ public class MovieManager {
                 System.out.println("Movie removal cancelled.");
             }
         } else {
-            System.out.println("Error: Invalid movie number!");
+            System.out.println("Error: Invalid movie ID!");
         }
     }
     